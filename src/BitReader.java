@@ -0,0 +1,46 @@
+// this class reads back what a BitWriter packed into a ByteBuffer, in the same order
+
+import java.nio.ByteBuffer;
+
+public class BitReader {
+    private ByteBuffer buffer;
+    private long bits;
+    private int count;
+
+    // start reading at the buffer's position
+    public void start(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.bits = 0;
+        this.count = 0;
+    }
+
+    // the next n bits (n up to 32)
+    public int read(int n) {
+        while (count < n) {
+            bits = (bits << 8) | (buffer.get() & 0xFF);
+            count += 8;
+        }
+        count -= n;
+        return (int) ((bits >>> count) & ((1L << n) - 1));
+    }
+
+    public boolean readBoolean() {
+        return read(1) != 0;
+    }
+
+    public int readGamma() {
+        int zeros = 0;
+        while (read(1) == 0) {
+            zeros++;
+            if (zeros > 31) {
+                throw new IllegalStateException("Bad gamma code");
+            }
+        }
+        return zeros == 0 ? 1 : (1 << zeros) | read(zeros);
+    }
+
+    public int readSigned() {
+        int zigzag = readGamma() - 1;
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,56 @@
+// this class packs numbers into a ByteBuffer bit by bit, for network messages where every byte counts
+// small numbers can be written with Elias gamma codes: 1 takes 1 bit, 2-3 take 3 bits, 4-7 take 5 bits and so on
+// nothing is allocated, the same writer is pointed at a new buffer for every message
+
+import java.nio.ByteBuffer;
+
+public class BitWriter {
+    private ByteBuffer buffer;
+    private long bits;    // bits not written to the buffer yet, the oldest in the high end
+    private int count;    // how many of them there are
+    private int written;  // bits written since start()
+
+    // start writing at the buffer's position
+    public void start(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.bits = 0;
+        this.count = 0;
+        this.written = 0;
+    }
+
+    // the low n bits of value (n up to 32)
+    public void write(long value, int n) {
+        bits = (bits << n) | (value & ((1L << n) - 1));
+        count += n;
+        written += n;
+        while (count >= 8) {
+            count -= 8;
+            buffer.put((byte) (bits >>> count));
+        }
+    }
+
+    public void writeBoolean(boolean value) {
+        write(value ? 1 : 0, 1);
+    }
+
+    // Elias gamma code of a number from 1 up: as many zeros as it has bits after the first, then the number
+    public void writeGamma(int value) {
+        int length = 32 - Integer.numberOfLeadingZeros(value);
+        write(0, length - 1);
+        write(value, length);
+    }
+
+    // any int that is usually close to 0: zigzag (0, -1, 1, -2, ... becomes 1, 2, 3, 4, ...) then gamma
+    public void writeSigned(int value) {
+        writeGamma(((value << 1) ^ (value >> 31)) + 1);
+    }
+
+    // write out the last partial byte (padded with zeros), returns the bits written
+    public int finish() {
+        if (count > 0) {
+            buffer.put((byte) (bits << (8 - count)));
+            count = 0;
+        }
+        return written;
+    }
+}
@@ -0,0 +1,11 @@
+// blinky (red) chases pacman's tile directly
+
+import java.util.List;
+
+public class BlinkyTargeting implements TargetingStrategy {
+    @Override
+    public void chooseTarget(Ghost ghost, Pacman pacman, List<Ghost> ghosts, int[] target) {
+        target[0] = pacman.getTileCol();
+        target[1] = pacman.getTileRow();
+    }
+}
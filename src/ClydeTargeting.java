@@ -0,0 +1,21 @@
+// clyde (orange) chases pacman like blinky until he gets within 8 tiles, then he runs back to his corner
+
+import java.util.List;
+
+public class ClydeTargeting implements TargetingStrategy {
+    private static final int SHY_DISTANCE_SQUARED = 8 * 8; // in tiles, compared squared so there's no sqrt
+
+    @Override
+    public void chooseTarget(Ghost ghost, Pacman pacman, List<Ghost> ghosts, int[] target) {
+        int dCol = pacman.getTileCol() - ghost.getTileCol();
+        int dRow = pacman.getTileRow() - ghost.getTileRow();
+
+        if (dCol * dCol + dRow * dRow > SHY_DISTANCE_SQUARED) {
+            target[0] = pacman.getTileCol();
+            target[1] = pacman.getTileRow();
+        } else {
+            target[0] = ghost.getScatterTarget().getCol();
+            target[1] = ghost.getScatterTarget().getRow();
+        }
+    }
+}
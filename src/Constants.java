@@ -59,6 +59,12 @@ public class Constants {
     public static final int POWER_PELLET_SCORE = 50;
     public static final int GHOST_SCORE = 200;
 
+    // game events sent through the EventBus
+    public static final int PELLET_EATEN = 0;  // value is the pellet index
+    public static final int GHOST_EATEN = 1;   // value is the ghost type
+    public static final int PACMAN_DIED = 2;   // value is the lives left
+    public static final int LEVEL_CLEARED = 3; // value is the level that was cleared
+
 
 
 
@@ -0,0 +1,170 @@
+// this class checks the network state format (BitWriter/BitReader, DeltaEncoder/DeltaDecoder) round trips exactly
+//   - bits: random fixed width numbers, gamma codes and signed numbers are written and read back
+//   - game: a game is played with random keys, and after every tick its state is encoded, decoded and compared
+//     with the state itself (NetFrame.sameAs). Games are started over when they end and every few thousand
+//     ticks, so keyframes after a reset are checked too. It runs twice: once as a player client that loses
+//     some of its acks (the deltas then build on older frames), once chained like a spectator feed
+// run it after any change to the message layout
+//
+// usage: java DeltaCheck [seed] [ticks] [lost acks in percent]
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+public class DeltaCheck {
+    private static final String MAZE_FILE = "pacMaze1.txt";
+    // ticks before a game that is still going is started over anyway
+    private static final int RESET_TICKS = 3000;
+
+    // write random numbers of every kind, read them back, returns how many came back wrong
+    public static int checkBits(long seed, int count) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] kinds = new int[count];
+        int[] widths = new int[count];
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            kinds[i] = random.nextInt(4);
+            int width = random.nextInt(1, 32);
+            widths[i] = width;
+            switch (kinds[i]) {
+                case 0: // fixed width
+                    values[i] = (int) (random.nextLong() & ((1L << width) - 1));
+                    break;
+                case 1: // gamma, 1 up to 2^31 - 1
+                    values[i] = (int) Math.max(1, random.nextLong() & ((1L << width) - 1));
+                    break;
+                case 2: // signed, small ones mostly like the deltas
+                    values[i] = random.nextInt(-(1 << Math.min(width, 29)), 1 << Math.min(width, 29));
+                    break;
+                default:
+                    values[i] = random.nextInt(2);
+                    break;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(count * 8 + 8);
+        BitWriter writer = new BitWriter();
+        writer.start(buffer);
+        for (int i = 0; i < count; i++) {
+            switch (kinds[i]) {
+                case 0 -> writer.write(values[i], widths[i]);
+                case 1 -> writer.writeGamma(values[i]);
+                case 2 -> writer.writeSigned(values[i]);
+                default -> writer.writeBoolean(values[i] != 0);
+            }
+        }
+        writer.finish();
+        buffer.flip();
+
+        BitReader reader = new BitReader();
+        reader.start(buffer);
+        int wrong = 0;
+        for (int i = 0; i < count; i++) {
+            int value = switch (kinds[i]) {
+                case 0 -> reader.read(widths[i]);
+                case 1 -> reader.readGamma();
+                case 2 -> reader.readSigned();
+                default -> reader.readBoolean() ? 1 : 0;
+            };
+            if (value != values[i]) {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    // play ticks of random games, encode and decode every tick and compare, returns how many ticks came back wrong
+    // lostAcks is the percent of acks the client loses, -1 acks every tick on the server side like SpectatorFeed
+    public static int checkGame(MazeGroup nodes, long seed, int ticks, int lostAcks) {
+        GameState gameState = new GameState();
+        gameState.startGame();
+        EventBus eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        GameSimulation simulation = new GameSimulation(nodes, gameState, eventBus, seed);
+        simulation.setFixedPoint(true); // like ServerSession
+
+        int pellets = nodes.getPellets().size();
+        int entities = 1 + simulation.getGhostAI().getGhosts().size();
+        DeltaEncoder encoder = new DeltaEncoder(pellets, entities);
+        DeltaDecoder decoder = new DeltaDecoder(pellets, entities);
+        NetFrame expected = new NetFrame(pellets, entities);
+        ByteBuffer message = ByteBuffer.allocate(GameServer.MAX_MESSAGE);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int wrong = 0;
+        int firstWrong = -1;
+        int resets = 0;
+        int keyframesAfterReset = 0;
+        boolean justReset = false;
+        long bytes = 0;
+        int gameStart = 0;
+        int holdFor = 0;
+        for (int tick = 0; tick < ticks; tick++) {
+            if (holdFor-- <= 0) {
+                simulation.getPacman().setInputDirection(PacmanEnv.ACTIONS[random.nextInt(PacmanEnv.ACTIONS.length)]);
+                holdFor = random.nextInt(1, 61);
+            }
+            simulation.step(TimerWheel.TICK);
+            eventBus.dispatch();
+            if (gameState.inDeathAnimation()) {
+                gameState.continueAfterDeath();
+                simulation.resetPositions();
+            } else if (gameState.getCurrentState() == Constants.GAME_OVER || simulation.getPelletsLeft() == 0
+                    || tick - gameStart >= RESET_TICKS) {
+                simulation.reset(seed + tick);
+                eventBus.clear();
+                gameStart = tick;
+                resets++;
+                justReset = true;
+            }
+
+            encoder.capture(simulation, tick);
+            message.clear();
+            encoder.encode(message);
+            if (lostAcks < 0) {
+                encoder.ack(tick);
+            }
+            message.flip();
+            bytes += message.remaining();
+            if (justReset && encoder.wasKeyframe()) {
+                keyframesAfterReset++;
+            }
+            justReset = false;
+
+            message.get(); // the DELTA type byte
+            int decoded = decoder.decode(message);
+            expected.capture(simulation, tick);
+            if (decoded != tick || !decoder.getLatest().sameAs(expected)) {
+                wrong++;
+                if (firstWrong < 0) {
+                    firstWrong = tick;
+                }
+            }
+            if (lostAcks >= 0 && random.nextInt(100) >= lostAcks) {
+                encoder.ack(decoded);
+            }
+        }
+
+        System.out.printf("%s: %d ticks, %d wrong%s, %d keyframes (%d right after one of %d resets), %.2f bytes a tick%n",
+                lostAcks < 0 ? "chained" : "player losing " + lostAcks + "% of acks", ticks, wrong,
+                firstWrong < 0 ? "" : " (first at tick " + firstWrong + ")",
+                encoder.getKeyframes(), keyframesAfterReset, resets, bytes / (double) ticks);
+        return wrong;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int lostAcks = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        MazeGroup nodes = new MazeGroup(FileReader.readMazeFile(MAZE_FILE));
+        int wrongBits = checkBits(seed, 100_000);
+        System.out.println("bits: 100000 numbers, " + wrongBits + " wrong");
+        int wrong = wrongBits;
+        wrong += checkGame(nodes, seed, ticks, lostAcks);
+        wrong += checkGame(nodes, seed, ticks, -1);
+        if (wrong > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// this class is the client side of DeltaEncoder: it reads keyframes and deltas back into NetFrames
+// it keeps the frames it decoded, so a delta can be applied to whichever one the server used as its baseline
+// after decoding a frame the client should acknowledge its tick (the ACK message), so later deltas can build on it
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class DeltaDecoder {
+    private NetFrame[] frames = new NetFrame[DeltaEncoder.RING_SIZE];
+    private NetFrame latest;
+    private BitReader bits = new BitReader();
+
+    public DeltaDecoder(int pelletCount, int entityCount) {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new NetFrame(pelletCount, entityCount);
+        }
+    }
+
+    // read one message (after its DELTA type byte), returns the tick of the new frame
+    // or -1 if it was a delta on a frame we don't have, the next keyframe fixes that
+    public int decode(ByteBuffer in) {
+        bits.start(in);
+        if (bits.readBoolean()) {
+            int tick = bits.read(32);
+            NetFrame frame = frames[tick & (frames.length - 1)];
+            readKeyframe(frame, tick);
+            latest = frame;
+            return tick;
+        }
+
+        // the baseline is one of the frames we acknowledged, at most RING_SIZE ticks old
+        NetFrame base = frames[bits.read(6)];
+        if (base.tick < 0) {
+            return -1;
+        }
+        int tick = base.tick + bits.readGamma();
+        NetFrame frame = frames[tick & (frames.length - 1)];
+        if (frame != base) {
+            frame.copyFrom(base);
+        }
+        readDelta(frame, tick);
+        latest = frame;
+        return tick;
+    }
+
+    private void readKeyframe(NetFrame frame, int tick) {
+        frame.tick = tick;
+        frame.score = bits.readGamma() - 1;
+        frame.lives = bits.readGamma() - 1;
+        frame.state = bits.read(3);
+        Arrays.fill(frame.eaten, 0);
+        for (int i = 0; i < frame.pelletCount; i++) {
+            if (bits.readBoolean()) {
+                frame.eaten[i >>> 6] |= 1L << i;
+            }
+        }
+        for (int e = 0; e < frame.x.length; e++) {
+            int col = bits.readSigned();
+            int row = bits.readSigned();
+            frame.x[e] = col * Constants.TILE_WIDTH + bits.read(5);
+            frame.y[e] = row * Constants.TILE_HEIGHT + bits.read(5);
+            frame.direction[e] = bits.read(3) - 2;
+            frame.behavior[e] = bits.read(2);
+        }
+    }
+
+    private void readDelta(NetFrame frame, int tick) {
+        frame.tick = tick;
+        if (bits.readBoolean()) {
+            if (bits.readBoolean()) {
+                frame.score += bits.readSigned();
+            }
+            if (bits.readBoolean()) {
+                frame.lives += bits.readSigned();
+            }
+            if (bits.readBoolean()) {
+                frame.state = bits.read(3);
+            }
+        }
+
+        if (bits.readBoolean()) {
+            int runs = bits.readGamma();
+            int runEnd = 0;
+            for (int r = 0; r < runs; r++) {
+                int start = runEnd + bits.readGamma() - 1;
+                int length = bits.readGamma();
+                for (int i = start; i < start + length; i++) {
+                    frame.eaten[i >>> 6] |= 1L << i;
+                }
+                runEnd = start + length;
+            }
+        }
+
+        for (int e = 0; e < frame.x.length; e++) {
+            if (!bits.readBoolean()) {
+                continue;
+            }
+            if (bits.readBoolean()) {
+                frame.direction[e] = bits.read(3) - 2;
+                frame.behavior[e] = bits.read(2);
+            }
+            if (bits.readBoolean()) {
+                int ahead = bits.readGamma();
+                switch (frame.direction[e]) {
+                    case Constants.UP: frame.y[e] -= ahead; break;
+                    case Constants.DOWN: frame.y[e] += ahead; break;
+                    case Constants.LEFT: frame.x[e] -= ahead; break;
+                    case Constants.RIGHT: frame.x[e] += ahead; break;
+                }
+            } else {
+                if (bits.readBoolean()) {
+                    frame.x[e] += bits.readSigned();
+                }
+                if (bits.readBoolean()) {
+                    frame.y[e] += bits.readSigned();
+                }
+            }
+        }
+    }
+
+    // the newest decoded frame, null before the first one
+    public NetFrame getLatest() {
+        return latest;
+    }
+}
@@ -0,0 +1,229 @@
+// this class turns the state of a game into small bit-packed messages for one network client (see DeltaDecoder)
+// most messages only say what changed since the newest frame the client acknowledged: how far pacman and each ghost
+// moved, turned or changed behavior, which pellets were eaten (as runs of pellet numbers) and how the score went up
+// a keyframe with the whole state goes out every KEYFRAME_INTERVAL ticks, or when the client has acknowledged
+// nothing recent enough (just joined, lost packets, a new game started)
+//
+// capture() and encode() are called on the server tick thread and allocate nothing, ack() may come from any thread
+//
+// message after the DELTA type byte:
+//   keyframe: 1, tick (32 bits), score, lives (gamma), state (3 bits), eaten pellets (one bit each),
+//             per entity: tile col and row (signed gamma), pixel in the tile x and y (5 bits each),
+//             direction (3 bits), behavior (2 bits)
+//   delta:    0, ring slot of the baseline tick (6 bits), ticks since the baseline (gamma),
+//             stats changed bit, then score, lives, state: changed bit, then the change
+//             (signed gamma, signed gamma, 3 bits)
+//             pellets: any eaten bit, then number of runs (gamma), per run: gap before it + 1, length (gamma)
+//             per entity: changed bit, then turned bit (direction and behavior follow, 3 and 2 bits),
+//             then either 1 and the pixels moved straight ahead (gamma), the usual case,
+//             or 0 and x and y: changed bit and distance moved (signed gamma)
+
+import java.nio.ByteBuffer;
+
+public class DeltaEncoder {
+    // frames kept for the client to acknowledge, a power of two
+    public static final int RING_SIZE = 64;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    // ticks between keyframes
+    public static final int KEYFRAME_INTERVAL = 120;
+
+    private NetFrame[] frames = new NetFrame[RING_SIZE];
+    private NetFrame latest;
+    private volatile int ackedTick = -1;
+    private int lastKeyframe = Integer.MIN_VALUE / 2;
+    private BitWriter bits = new BitWriter();
+
+    // stats
+    private long keyframes;
+    private long deltas;
+
+    public DeltaEncoder(int pelletCount, int entityCount) {
+        for (int i = 0; i < RING_SIZE; i++) {
+            frames[i] = new NetFrame(pelletCount, entityCount);
+        }
+    }
+
+    // take the state of the game after a tick
+    public void capture(GameSimulation simulation, int tick) {
+        latest = frames[tick & RING_MASK];
+        latest.capture(simulation, tick);
+    }
+
+    // the client has the frame of this tick
+    public void ack(int tick) {
+        if (tick > ackedTick) {
+            ackedTick = tick;
+        }
+    }
+
+    // make the next message a keyframe
+    public void requestKeyframe() {
+        lastKeyframe = Integer.MIN_VALUE / 2;
+    }
+
+    // true if the last message written was a keyframe
+    public boolean wasKeyframe() {
+        return latest != null && lastKeyframe == latest.tick;
+    }
+
+    // write the message for the newest captured frame
+    public void encode(ByteBuffer out) {
+        out.put(GameServer.DELTA);
+        bits.start(out);
+
+        NetFrame baseline = null;
+        int acked = ackedTick;
+        if (acked >= 0 && latest.tick - acked < RING_SIZE && latest.tick > acked
+                && latest.tick - lastKeyframe < KEYFRAME_INTERVAL) {
+            baseline = frames[acked & RING_MASK];
+            if (baseline.tick != acked || !latest.eatenIncludes(baseline)) {
+                baseline = null;
+            }
+        }
+
+        if (baseline == null) {
+            writeKeyframe(latest);
+            lastKeyframe = latest.tick;
+            keyframes++;
+        } else {
+            writeDelta(baseline, latest);
+            deltas++;
+        }
+        bits.finish();
+    }
+
+    private void writeKeyframe(NetFrame frame) {
+        bits.write(1, 1);
+        bits.write(frame.tick, 32);
+        bits.writeGamma(frame.score + 1);
+        bits.writeGamma(frame.lives + 1);
+        bits.write(frame.state, 3);
+        for (int i = 0; i < frame.pelletCount; i++) {
+            bits.writeBoolean(frame.isEaten(i));
+        }
+        for (int e = 0; e < frame.x.length; e++) {
+            int col = Math.floorDiv(frame.x[e], Constants.TILE_WIDTH);
+            int row = Math.floorDiv(frame.y[e], Constants.TILE_HEIGHT);
+            bits.writeSigned(col);
+            bits.writeSigned(row);
+            bits.write(frame.x[e] - col * Constants.TILE_WIDTH, 5);
+            bits.write(frame.y[e] - row * Constants.TILE_HEIGHT, 5);
+            bits.write(frame.direction[e] + 2, 3);
+            bits.write(frame.behavior[e], 2);
+        }
+    }
+
+    private void writeDelta(NetFrame base, NetFrame frame) {
+        bits.write(0, 1);
+        bits.write(base.tick & RING_MASK, 6);
+        bits.writeGamma(frame.tick - base.tick);
+
+        boolean statsChanged = frame.score != base.score || frame.lives != base.lives || frame.state != base.state;
+        bits.writeBoolean(statsChanged);
+        if (statsChanged) {
+            bits.writeBoolean(frame.score != base.score);
+            if (frame.score != base.score) {
+                bits.writeSigned(frame.score - base.score);
+            }
+            bits.writeBoolean(frame.lives != base.lives);
+            if (frame.lives != base.lives) {
+                bits.writeSigned(frame.lives - base.lives);
+            }
+            bits.writeBoolean(frame.state != base.state);
+            if (frame.state != base.state) {
+                bits.write(frame.state, 3);
+            }
+        }
+
+        writeEatenRuns(base, frame);
+
+        for (int e = 0; e < frame.x.length; e++) {
+            int dx = frame.x[e] - base.x[e];
+            int dy = frame.y[e] - base.y[e];
+            boolean turned = frame.direction[e] != base.direction[e] || frame.behavior[e] != base.behavior[e];
+            bits.writeBoolean(dx != 0 || dy != 0 || turned);
+            if (dx == 0 && dy == 0 && !turned) {
+                continue;
+            }
+            bits.writeBoolean(turned);
+            if (turned) {
+                bits.write(frame.direction[e] + 2, 3);
+                bits.write(frame.behavior[e], 2);
+            }
+
+            int ahead = distanceAhead(frame.direction[e], dx, dy);
+            bits.writeBoolean(ahead > 0);
+            if (ahead > 0) {
+                bits.writeGamma(ahead);
+            } else {
+                writeChange(dx);
+                writeChange(dy);
+            }
+        }
+    }
+
+    // pixels moved if (dx, dy) points straight along the direction, 0 if it doesn't
+    static int distanceAhead(int direction, int dx, int dy) {
+        switch (direction) {
+            case Constants.UP: return dx == 0 && dy < 0 ? -dy : 0;
+            case Constants.DOWN: return dx == 0 && dy > 0 ? dy : 0;
+            case Constants.LEFT: return dy == 0 && dx < 0 ? -dx : 0;
+            case Constants.RIGHT: return dy == 0 && dx > 0 ? dx : 0;
+            default: return 0;
+        }
+    }
+
+    private void writeChange(int change) {
+        bits.writeBoolean(change != 0);
+        if (change != 0) {
+            bits.writeSigned(change);
+        }
+    }
+
+    // pellets eaten since the baseline, as runs of neighbouring pellet numbers
+    private void writeEatenRuns(NetFrame base, NetFrame frame) {
+        int runs = 0;
+        boolean inRun = false;
+        for (int i = 0; i < frame.pelletCount; i++) {
+            boolean eaten = newlyEaten(base, frame, i);
+            if (eaten && !inRun) {
+                runs++;
+            }
+            inRun = eaten;
+        }
+
+        bits.writeBoolean(runs > 0);
+        if (runs == 0) {
+            return;
+        }
+        bits.writeGamma(runs);
+        int runEnd = 0;
+        int i = 0;
+        while (i < frame.pelletCount) {
+            if (!newlyEaten(base, frame, i)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < frame.pelletCount && newlyEaten(base, frame, i)) {
+                i++;
+            }
+            bits.writeGamma(start - runEnd + 1);
+            bits.writeGamma(i - start);
+            runEnd = i;
+        }
+    }
+
+    private static boolean newlyEaten(NetFrame base, NetFrame frame, int pellet) {
+        return frame.isEaten(pellet) && !base.isEaten(pellet);
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    public long getDeltas() {
+        return deltas;
+    }
+}
@@ -0,0 +1,180 @@
+// this class checks that the game is deterministic: it plays the same input log (a Replay) several times, hashes
+// the whole game state after every tick (see StateHash) and reports the first tick where two runs don't agree
+//   - twice in this JVM, the second time with the ghost swarm on a single thread
+//   - once more in a child JVM started with other flags (by default the interpreter only and a one thread
+//     common pool), so JIT compiled and interpreted math and thread counts get compared too
+// random input logs are played in fixed point like the real game (see GameSimulation.setFixedPoint), a replay
+// file in whatever mode it was recorded in
+// run it after any change to caching, threading or the order things are updated in
+//
+// usage: java DeterminismCheck <replay file> [child jvm flags]
+//        java DeterminismCheck --random <seed> <ticks> <ghosts> [child jvm flags]
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+public class DeterminismCheck {
+    public static final String DEFAULT_CHILD_FLAGS = "-Xint -Djava.util.concurrent.ForkJoinPool.common.parallelism=1";
+    private static final String MAZE_FILE = "pacMaze1.txt";
+
+    // hash of the state after every tick of the replay, pool is used for big ghost swarms (null for the default)
+    public static long[] hashes(Replay replay, MazeGroup nodes, ForkJoinPool pool) {
+        ReplayPlayer player = new ReplayPlayer(replay, nodes);
+        if (pool != null) {
+            player.getSimulation().getGhostAI().setPool(pool);
+        }
+
+        long[] hashes = new long[(int) replay.getTicks()];
+        int ticks = 0;
+        while (player.step()) {
+            hashes[ticks++] = player.getSimulation().getStateHash();
+        }
+        return Arrays.copyOf(hashes, ticks);
+    }
+
+    // first tick where the two runs differ, -1 if they agree all the way
+    public static int firstDifference(long[] a, long[] b) {
+        int ticks = Math.min(a.length, b.length);
+        for (int tick = 0; tick < ticks; tick++) {
+            if (a[tick] != b[tick]) {
+                return tick;
+            }
+        }
+        return a.length == b.length ? -1 : ticks;
+    }
+
+    // an input log of random key presses (a new key every 1 to 60 ticks), to check without a recorded game
+    public static Replay randomReplay(MazeGroup nodes, long seed, int ticks, int ghostCount) {
+        GameState gameState = new GameState();
+        gameState.startGame();
+        EventBus eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        GameSimulation simulation = new GameSimulation(nodes, gameState, eventBus, seed, ghostCount);
+        simulation.setFixedPoint(true);
+        ReplayRecorder recorder = new ReplayRecorder(simulation, seed);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int holdFor = 0;
+        for (int tick = 0; tick < ticks && gameState.getCurrentState() != Constants.GAME_OVER; tick++) {
+            if (holdFor-- <= 0) {
+                simulation.getPacman().setInputDirection(PacmanEnv.ACTIONS[random.nextInt(PacmanEnv.ACTIONS.length)]);
+                holdFor = random.nextInt(1, 61);
+            }
+            recorder.record();
+            simulation.step(TimerWheel.TICK);
+            eventBus.dispatch();
+            if (gameState.inDeathAnimation()) {
+                gameState.continueAfterDeath();
+                simulation.resetPositions();
+            }
+        }
+        return recorder.getReplay();
+    }
+
+    // play the replay in a child JVM with the given flags and read back its hashes
+    private static long[] childHashes(Path replayFile, String flags) throws IOException, InterruptedException {
+        Path hashFile = Files.createTempFile("hashes", ".bin");
+        try {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            for (String flag : flags.trim().split("\\s+")) {
+                if (!flag.isEmpty()) {
+                    command.add(flag);
+                }
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(DeterminismCheck.class.getName());
+            command.add("--child");
+            command.add(replayFile.toString());
+            command.add(hashFile.toString());
+
+            Process child = new ProcessBuilder(command).inheritIO().start();
+            if (child.waitFor() != 0) {
+                throw new IOException("Child JVM failed with exit code " + child.exitValue());
+            }
+
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(hashFile))) {
+                long[] hashes = new long[in.readInt()];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashes[i] = in.readLong();
+                }
+                return hashes;
+            }
+        } finally {
+            Files.deleteIfExists(hashFile);
+        }
+    }
+
+    // compare two runs and print the result, returns true if they agree
+    private static boolean report(String name, long[] expected, long[] actual) {
+        int tick = firstDifference(expected, actual);
+        if (tick < 0) {
+            System.out.println(name + ": same on all " + expected.length + " ticks");
+            return true;
+        }
+        if (tick >= expected.length || tick >= actual.length) {
+            System.out.println(name + ": runs have different lengths, " + expected.length + " and " + actual.length + " ticks");
+        } else {
+            System.out.printf("%s: first difference at tick %d, %016x and %016x%n", name, tick, expected[tick], actual[tick]);
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // the child JVM: play a replay and write its hashes to a file
+        if (args.length == 3 && args[0].equals("--child")) {
+            Replay replay = Replay.read(Paths.get(args[1]));
+            long[] hashes = hashes(replay, new MazeGroup(FileReader.readMazeFile(MAZE_FILE)), null);
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Paths.get(args[2])))) {
+                out.writeInt(hashes.length);
+                for (long hash : hashes) {
+                    out.writeLong(hash);
+                }
+            }
+            return;
+        }
+
+        MazeGroup nodes = new MazeGroup(FileReader.readMazeFile(MAZE_FILE));
+        Replay replay;
+        Path replayFile;
+        String flags;
+        if (args.length >= 4 && args[0].equals("--random")) {
+            replay = randomReplay(nodes, Long.parseLong(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            replayFile = Files.createTempFile("replay", ReplayRecorder.EXTENSION);
+            replay.write(replayFile);
+            replayFile.toFile().deleteOnExit();
+            flags = args.length > 4 ? args[4] : DEFAULT_CHILD_FLAGS;
+        } else if (args.length >= 1) {
+            replayFile = Paths.get(args[0]);
+            replay = Replay.read(replayFile);
+            flags = args.length > 1 ? args[1] : DEFAULT_CHILD_FLAGS;
+        } else {
+            System.err.println("usage: java DeterminismCheck <replay file> [child jvm flags]");
+            System.err.println("       java DeterminismCheck --random <seed> <ticks> <ghosts> [child jvm flags]");
+            return;
+        }
+        System.out.println("Checking " + replay.getTicks() + " ticks with " + replay.getGhostCount() + " ghosts");
+
+        long[] first = hashes(replay, nodes, null);
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        long[] second = hashes(replay, nodes, singleThread);
+        singleThread.shutdown();
+        long[] child = childHashes(replayFile, flags);
+
+        boolean same = report("same JVM, one thread", first, second);
+        same &= report("child JVM (" + flags + ")", first, child);
+        if (!same) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// this class answers "how far is it from this node to that node along the maze" in tiles
+// the distances from a node to every other node are worked out the first time someone asks
+// (a shortest path search over the MazeGroup graph) and kept, the maze never changes after all,
+// so when pacman reaches a new node every ghost chasing him shares one search, and going back to
+// a node pacman has already been on costs nothing at all
+//
+// all the games built on the same MazeGroup share its DistanceField, it is safe to use from several threads
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class DistanceField {
+    // distance to nodes that can't be reached
+    public static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    private List<Maze> nodeList;
+    private int cols;
+    private int rows;
+    private Maze[] nodeGrid; // node on each tile (row * cols + col), null if there is none
+
+    // distances from each node, filled in as they are asked for
+    private AtomicReferenceArray<int[]> fields;
+
+    public DistanceField(MazeGroup nodes) {
+        this.nodeList = nodes.getNodeList();
+        char[][] maze = nodes.getMazeData();
+        this.rows = maze.length;
+        this.cols = maze[0].length;
+        this.nodeGrid = new Maze[rows * cols];
+        for (Maze node : nodeList) {
+            if (node.getCol() >= 0 && node.getCol() < cols && node.getRow() >= 0 && node.getRow() < rows) {
+                nodeGrid[node.getRow() * cols + node.getCol()] = node;
+            }
+        }
+        this.fields = new AtomicReferenceArray<>(nodeList.size());
+    }
+
+    // the node on a tile, null if the tile has no node (or is outside the maze)
+    public Maze nodeAt(int col, int row) {
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            return null;
+        }
+        return nodeGrid[row * cols + col];
+    }
+
+    // distances in tiles from root to every node, indexed by node index, don't change the array
+    public int[] from(Maze root) {
+        int[] field = fields.get(root.getIndex());
+        if (field == null) {
+            field = compute(root);
+            fields.set(root.getIndex(), field);
+        }
+        return field;
+    }
+
+    // tiles between two nodes along the maze
+    public int distance(Maze from, Maze to) {
+        return from(to)[from.getIndex()];
+    }
+
+    // tiles along the straight edge between two neighboring nodes
+    public static int edgeLength(Maze a, Maze b) {
+        return Math.abs(a.getCol() - b.getCol()) + Math.abs(a.getRow() - b.getRow());
+    }
+
+    // shortest paths from root (Dijkstra, edges are usually one tile but don't have to be)
+    private int[] compute(Maze root) {
+        int count = nodeList.size();
+        int[] dist = new int[count];
+        Arrays.fill(dist, UNREACHABLE);
+
+        // binary heap of (distance << 32 | node index), a node can be in it more than once
+        long[] heap = new long[count + 1];
+        int size = 0;
+
+        dist[root.getIndex()] = 0;
+        heap[size++] = root.getIndex();
+
+        while (size > 0) {
+            long top = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+
+            int current = (int) top;
+            if ((int) (top >>> 32) > dist[current]) {
+                continue; // we already found a shorter way here
+            }
+
+            Maze node = nodeList.get(current);
+            Maze[] neighbors = node.getNeighbors();
+            for (int i = 0; i < neighbors.length; i++) {
+                Maze next = neighbors[i];
+                if (next == null) {
+                    continue;
+                }
+                int d = dist[current] + edgeLength(node, next);
+                if (d < dist[next.getIndex()]) {
+                    dist[next.getIndex()] = d;
+                    if (size == heap.length) {
+                        heap = Arrays.copyOf(heap, size * 2);
+                    }
+                    heap[size] = ((long) d << 32) | next.getIndex();
+                    siftUp(heap, size++);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long item = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= item) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = item;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        long item = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (item <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = item;
+    }
+}
@@ -0,0 +1,88 @@
+// this class collects the game events of one tick (pellets eaten, ghosts eaten, deaths, cleared levels)
+// in plain int arrays and hands them to the subscribers in one batch once the tick is over,
+// so sound, score and UI work doesn't happen in the middle of the simulation step
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventBus {
+    // event types and their values (pellet index, ghost type, ...) for the current tick
+    private int[] types;
+    private int[] values;
+    private int count;
+
+    private List<GameEventListener> listeners;
+
+    public EventBus() {
+        this.types = new int[16];
+        this.values = new int[16];
+        this.count = 0;
+        this.listeners = new ArrayList<>();
+    }
+
+    // listeners are called in the order they subscribed
+    public void subscribe(GameEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(GameEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    // queue an event for the end of the tick
+    public void publish(int type, int value) {
+        if (count == types.length) {
+            // grow the buffers, this only happens until we hit the busiest tick
+            int[] newTypes = new int[count * 2];
+            int[] newValues = new int[count * 2];
+            System.arraycopy(types, 0, newTypes, 0, count);
+            System.arraycopy(values, 0, newValues, 0, count);
+            types = newTypes;
+            values = newValues;
+        }
+        types[count] = type;
+        values[count] = value;
+        count++;
+    }
+
+    // send all queued events to the listeners and empty the buffer for the next tick
+    public void dispatch() {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onEvents(this);
+        }
+        count = 0;
+    }
+
+    // drop the queued events without telling anyone
+    public void clear() {
+        count = 0;
+    }
+
+    // getters for the listeners to read the batch
+
+    public int size() {
+        return count;
+    }
+
+    public int getType(int i) {
+        return types[i];
+    }
+
+    public int getValue(int i) {
+        return values[i];
+    }
+
+    // how many events of this type happened during the tick
+    public int countOf(int type) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (types[i] == type) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
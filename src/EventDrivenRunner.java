@@ -0,0 +1,197 @@
+// this class runs a GameSimulation from one event to the next instead of one tick at a time
+// nothing interesting happens between node arrivals: pacman and the ghosts move in straight lines at a steady
+// speed, and collisions and pellets are swept along those lines, so the game can jump straight to the next
+// moment someone reaches a node or a GhostAI timer runs out. Arrival times are worked out from speed and
+// distance and kept in a priority queue, only the ghosts that arrived are looked at again after a jump
+//
+// every jump goes EPSILON past the event so the arrival really happens in that step
+// the results follow the same rules as ticking but are not tick for tick the same: a tick based game loses
+// the bit of a tick left over when someone reaches a node, here nobody does
+
+import java.util.Arrays;
+
+public class EventDrivenRunner {
+    // how far past an event every jump goes, in seconds
+    public static final double EPSILON = 1e-6;
+
+    private GameSimulation simulation;
+
+    // game time since this runner was made
+    private double clock;
+
+    // binary heap of ghost arrivals (absolute time, ghost index), an entry is stale once the ghost was rescheduled
+    private double[] heapTimes;
+    private int[] heapGhosts;
+    private int heapSize;
+    private double[] arrivals; // the real arrival time of each ghost
+    private int[] arrived;     // ghosts taken off the heap in one go
+
+    // what the ghost schedule was built from, a change means every ghost has to be looked at again
+    private int modeVersion; // the last mode broadcast the ghosts acted on
+    private int releasedCount;
+
+    private long steps;
+
+    public EventDrivenRunner(GameSimulation simulation) {
+        this.simulation = simulation;
+        int ghostCount = simulation.getGhostAI().getGhosts().size();
+        this.heapTimes = new double[ghostCount * 2 + 1];
+        this.heapGhosts = new int[heapTimes.length];
+        this.arrivals = new double[ghostCount];
+        this.arrived = new int[ghostCount];
+    }
+
+    // play for up to maxSeconds of game time with the keys pacman holds now, returns the time played
+    // stops early if the game stops being played (pacman died, level over)
+    public double advance(double maxSeconds) {
+        return run(maxSeconds, false);
+    }
+
+    // same, but also stop as soon as pacman reaches a node (the moment he can choose a new way to go)
+    public double advanceToNextNode(double maxSeconds) {
+        return run(maxSeconds, true);
+    }
+
+    private double run(double maxSeconds, boolean stopAtNode) {
+        Pacman pacman = simulation.getPacman();
+        GhostAI ghostAI = simulation.getGhostAI();
+        GameState gameState = simulation.getGameState();
+
+        // anything may have changed since the last call (keys, snapshot restores, resets)
+        scheduleAllGhosts();
+
+        double elapsed = 0;
+        Maze startNode = pacman.getNode();
+        while (gameState.isPlaying() && elapsed < maxSeconds) {
+            // a mode change nobody has acted on yet turns the ghosts around in the next step
+            boolean pendingModeChange = ghostAI.getModeVersion() != modeVersion;
+
+            double next = Math.min(pacman.timeToNextNode(), ghostAI.timeToNextEvent());
+            next = Math.min(next, nextGhostArrival() - clock);
+            if (pendingModeChange) {
+                next = 0;
+            }
+            double dt = Math.min(Math.max(next, 0) + EPSILON, maxSeconds - elapsed);
+
+            simulation.step(dt);
+            simulation.getEventBus().dispatch();
+            clock += dt;
+            elapsed += dt;
+            steps++;
+
+            if (ghostAI.getModeVersion() != modeVersion || ghostAI.getReleasedCount() != releasedCount) {
+                scheduleAllGhosts();
+            } else {
+                rescheduleArrivedGhosts();
+            }
+
+            if (stopAtNode && pacman.getNode() != startNode) {
+                break;
+            }
+        }
+        return elapsed;
+    }
+
+    // work out every ghost's arrival from scratch
+    private void scheduleAllGhosts() {
+        GhostAI ghostAI = simulation.getGhostAI();
+        // every ghost catches up on broadcasts in the same update, so the first one speaks for all of them
+        modeVersion = ghostAI.getGhosts().isEmpty() ? ghostAI.getModeVersion() : ghostAI.getGhosts().get(0).getModeVersion();
+        releasedCount = ghostAI.getReleasedCount();
+        heapSize = 0;
+        for (int i = 0; i < arrivals.length; i++) {
+            schedule(i);
+        }
+    }
+
+    // ghosts whose arrival time has passed reached their node in the last step, they have a new edge now
+    // they are all taken off first, a ghost that ends up a hair short of its node is due again right away
+    private void rescheduleArrivedGhosts() {
+        int count = 0;
+        while (heapSize > 0 && heapTimes[0] <= clock) {
+            int ghost = heapGhosts[0];
+            if (heapTimes[0] == arrivals[ghost]) {
+                arrived[count++] = ghost;
+            }
+            pop();
+        }
+        for (int i = 0; i < count; i++) {
+            schedule(arrived[i]);
+        }
+    }
+
+    // earliest arrival still ahead, stale entries on top are thrown away on the way
+    private double nextGhostArrival() {
+        while (heapSize > 0 && heapTimes[0] != arrivals[heapGhosts[0]]) {
+            pop();
+        }
+        return heapSize > 0 ? heapTimes[0] : Double.POSITIVE_INFINITY;
+    }
+
+    private void schedule(int i) {
+        // ghosts still in the house don't move, their release is a GhostAI timer
+        double time = i < releasedCount
+                ? clock + simulation.getGhostAI().getGhosts().get(i).timeToNextNode()
+                : Double.POSITIVE_INFINITY;
+        arrivals[i] = time;
+        if (time == Double.POSITIVE_INFINITY) {
+            return;
+        }
+        if (heapSize == heapTimes.length) {
+            heapTimes = Arrays.copyOf(heapTimes, heapSize * 2);
+            heapGhosts = Arrays.copyOf(heapGhosts, heapSize * 2);
+        }
+        int at = heapSize++;
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (heapTimes[parent] <= time) {
+                break;
+            }
+            heapTimes[at] = heapTimes[parent];
+            heapGhosts[at] = heapGhosts[parent];
+            at = parent;
+        }
+        heapTimes[at] = time;
+        heapGhosts[at] = i;
+    }
+
+    private void pop() {
+        heapSize--;
+        double time = heapTimes[heapSize];
+        int ghost = heapGhosts[heapSize];
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapTimes[child + 1] < heapTimes[child]) {
+                child++;
+            }
+            if (time <= heapTimes[child]) {
+                break;
+            }
+            heapTimes[at] = heapTimes[child];
+            heapGhosts[at] = heapGhosts[child];
+            at = child;
+        }
+        heapTimes[at] = time;
+        heapGhosts[at] = ghost;
+    }
+
+    // getters
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    // game time this runner has played
+    public double getClock() {
+        return clock;
+    }
+
+    // how many steps the simulation has taken, compare with getClock() / PacmanEnv.TICK
+    public long getSteps() {
+        return steps;
+    }
+}
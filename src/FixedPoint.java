@@ -0,0 +1,32 @@
+// this class holds the helpers for 16.16 fixed point numbers: an int where the top 16 bits are the whole pixels
+// and the bottom 16 bits are fractions of a pixel (1/65536 each)
+// pacman and the ghosts can keep their positions like this (see setFixedPoint on them), then moving and the
+// "did we reach the node" checks are plain int math and come out exactly the same on every machine
+
+public class FixedPoint {
+    public static final int SHIFT = 16;
+    public static final int ONE = 1 << SHIFT;
+
+    private FixedPoint() {
+    }
+
+    // nearest fixed point number to a double
+    public static int fromDouble(double value) {
+        return (int) Math.round(value * ONE);
+    }
+
+    // the exact value of a fixed point number as a double
+    public static double toDouble(int value) {
+        return value / (double) ONE;
+    }
+
+    // multiply two fixed point numbers
+    public static int multiply(int a, int b) {
+        return (int) (((long) a * b) >> SHIFT);
+    }
+
+    // whole pixel, rounded to the nearest one
+    public static int round(int value) {
+        return (value + (ONE >> 1)) >> SHIFT;
+    }
+}
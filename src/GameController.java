@@ -6,6 +6,7 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import javax.swing.JFrame;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 
@@ -14,19 +15,38 @@ public class GameController extends JPanel {
     // creating a backgroundColor and setting to the BLACK declared in Constants.java
     private JFrame frame;
     private Color backgroundColor = Color.BLACK;
-    private Pacman pacman;
     private Instant lastTime;
     private BufferedImage background;
     private Graphics screen;
-    private MazeGroup nodes;
+    private GameSimulation simulation;
     private GameState gameState;
     private UIRender uiRender;
-    private GhostAI ghostAI;
+    private EventBus eventBus;
+    private MctsAutopilot autopilot;
+    private boolean autopilotOn = false;
+    private final long AUTOPILOT_BUDGET_MS = 15; // thinking time per decision
     private boolean isGameRunning;
     private boolean deathDelay = false;
-    private double deathTimer = 0;
+    private GameTimer deathTimer = new GameTimer(this::deathDelayOver);
     private final double DEATH_DELAY = 2.0; // 2 seconds delay
 
+    // the game moves in fixed ticks so a replay of the keys plays out the same, frame time is saved up in tickTime
+    private double tickTime;
+    private final int MAX_TICKS_PER_FRAME = 30; // after a long stall drop the time instead of catching up
+    private long levelSeed;
+    private ReplayRecorder recorder;
+    private HighScoreLog highScores; // null if the file couldn't be opened
+    private boolean levelCleared; // set by the event bus, the next level is loaded once the tick is done
+
+    // the game in progress is saved when it is paused, when the app is closed and every SAVE_INTERVAL seconds
+    // of play, and picked up again at the next start
+    private SaveGame saveGame = new SaveGame(SaveGame.DEFAULT_FILE);
+    private GameTimer autosaveTimer = new GameTimer(this::autosave);
+    private final double SAVE_INTERVAL = 10.0;
+
+    // timers that run on screen time (death delay, blinking text), turned every frame
+    private TimerWheel uiTimers = new TimerWheel();
+
     public GameController() {
         // initialize the game window
         frame = new JFrame("Pacman Game");
@@ -41,7 +61,7 @@ public class GameController extends JPanel {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                System.exit(0);
+                quit();
             }
         });
 
@@ -50,9 +70,34 @@ public class GameController extends JPanel {
         screen = background.getGraphics();
 
         this.gameState = new GameState();
-        this.uiRender = new UIRender(gameState);
+        this.uiRender = new UIRender(gameState, uiTimers);
         this.isGameRunning = true;
 
+        // finished games go in the high score log, read back every time the game starts
+        try {
+            this.highScores = new HighScoreLog(HighScoreLog.DEFAULT_FILE);
+            highScores.start();
+            uiRender.setHighScores(highScores);
+        } catch (IOException e) {
+            System.err.println("Error opening high scores: " + e.getMessage());
+        }
+
+        // game events are handed out once per tick, score first so the others see the new score
+        this.eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        eventBus.subscribe(SoundManager::onEvents);
+        eventBus.subscribe(events -> {
+            if (events.countOf(Constants.PELLET_EATEN) > 0) {
+                System.out.println("Pellet eaten! Score: " + gameState.getScore());
+            }
+        });
+        eventBus.subscribe(events -> {
+            if (events.countOf(Constants.LEVEL_CLEARED) > 0) {
+                System.out.println("Level cleared! Starting level " + gameState.getLevel());
+                levelCleared = true;
+            }
+        });
+
 
         // key listener for global game contorls
         frame.addKeyListener(new KeyAdapter() {
@@ -71,13 +116,28 @@ public class GameController extends JPanel {
     public void startGame() {
         setBackground();
 
+        // build the maze, ghosts and pacman
+        loadLevel();
+
+        // carry on with the game that was being played when the app was closed
+        resumeSavedGame();
+        uiTimers.scheduleSeconds(autosaveTimer, SAVE_INTERVAL);
+
+        // make sure the window gets the key events for pacman
+        if (frame != null) {
+            frame.setFocusable(true);
+            frame.requestFocus();
+        }
+    }
+
+    // read in maze file to set up maze
+    private MazeGroup loadMaze() {
         try {
-            // read in maze file to set up maze
             char[][] maze = FileReader.readMazeFile("pacMaze1.txt");
             System.out.println("Successfully loaded maze with dimensions: " +
                     maze.length + " rows x " + maze[0].length + " cols");
 
-            this.nodes = new MazeGroup(maze);
+            return new MazeGroup(maze);
 
         } catch (IOException e) {
             System.err.println("Error loading maze file: " + e.getMessage());
@@ -89,27 +149,7 @@ public class GameController extends JPanel {
                     {'+','.','+'},
                     {'X','+','X'}
             };
-            this.nodes = new MazeGroup(fallbackMaze);
-        }
-
-        // initialize ghost AI with the maze nodes
-        this.ghostAI = new GhostAI(this.nodes);
-
-        // initialize pacman with the first node in the nodeList
-        if (!this.nodes.getNodeList().isEmpty()) {
-            this.pacman = new Pacman(this.nodes.getNodeList().get(0));
-        } else {
-            //  if the nodes list is empty
-            System.err.println("Node list is empty");
-            this.pacman = new Pacman(new Maze(200, 400));
-        }
-        lastTime = Instant.now();
-
-        // registering the Pacman instance as a KeyListener
-        if (frame != null) {
-            frame.addKeyListener(pacman);
-            frame.setFocusable(true);
-            frame.requestFocus();
+            return new MazeGroup(fallbackMaze);
         }
     }
 
@@ -127,43 +167,42 @@ public class GameController extends JPanel {
             }
         }
 
-        // update UI animations
+        // update UI animations and timers
+        uiTimers.advance(dt);
         uiRender.update(dt);
 
         // only update gameplay components if game is in playing state
         if (gameState.getCurrentState() == Constants.PLAYING) {
-            // update pacman with the time
-            this.pacman.update(dt);
-
-            for (Pellet pellet : nodes.getPellets()) {
-                if (!pellet.isEaten()) {
-                    double distance = pellet.getPosition().subtract(pacman.getPosition()).magnitude();
-                    if (distance < 10) { // Pacman close enough
-                        pellet.eat();
-                        gameState.addScore(Constants.DOT_SCORE); // +10 points
-                        SoundManager.playSound("sounds/eat_pellet.wav");
-                        System.out.println("Pellet eaten! Score: " + gameState.getScore());
-                    }
-                }
+            // let the autopilot hold the keys if it's switched on, it thinks once per frame
+            if (autopilotOn) {
+                simulation.getPacman().setInputDirection(getAutopilot().decide(simulation));
             }
 
-            // update ghosts
-            if (ghostAI != null) {
-                // debug: print ghost count and positions
-                System.out.println("Updating " + ghostAI.getGhosts().size() + " ghosts");
-                ghostAI.update(dt, pacman);
-            } else {
-                System.out.println("WARNING: ghostAI is null!");
-            }
+            tickTime = Math.min(tickTime + dt, MAX_TICKS_PER_FRAME * TimerWheel.TICK);
+            while (tickTime >= TimerWheel.TICK && gameState.getCurrentState() == Constants.PLAYING) {
+                tickTime -= TimerWheel.TICK;
+
+                // move pacman and the ghosts, eat pellets and check if pacman was caught
+                if (recorder != null) {
+                    recorder.record();
+                }
+                simulation.step(TimerWheel.TICK);
 
-            this.checkEvents(dt);
-        } else if (deathDelay && gameState.getCurrentState() == Constants.DEATH_ANIMATION) {
-            // during death animation, count down the delay
-            deathTimer -= dt;
-            if (deathTimer <= 0) {
-                deathDelay = false;
-                // we don't transition automatically - wait for user input
+                this.checkEvents(TimerWheel.TICK);
+
+                // hand this tick's events to score, sound and logging in one go
+                eventBus.dispatch();
+
+                // the rest of this frame's time belongs to the old level
+                if (levelCleared) {
+                    levelCleared = false;
+                    loadLevel();
+                    tickTime = 0;
+                    break;
+                }
             }
+        } else {
+            tickTime = 0;
         }
 
         // render the game
@@ -173,33 +212,28 @@ public class GameController extends JPanel {
     }
 
     public void checkEvents(double dt) {
-        // if we're in death delay, count down the timer THIS MAY NOT WORK MIGHT NEED TO DEBUG
+        // if we're in death delay, deathTimer ends it
         if (deathDelay) {
-            deathTimer -= dt;
-            if (deathTimer <= 0) {
-                deathDelay = false;
-
-                // reset positions but continue game
-                if (pacman != null) {
-                    pacman = new Pacman(this.nodes.getNodeList().get(0));
-                    frame.addKeyListener(pacman);
-                }
-                ghostAI.resetGhosts();
-            }
             return; // skip the rest of the checks during delay
         }
 
-        // check if Pacman was caught by a ghost
-        if (ghostAI != null && ghostAI.checkPacmanCaught(pacman.getPosition())) {
-            // handle Pacman death
-            boolean gameStillGoing = gameState.pacmanDeath();
-            SoundManager.playSound("sounds/death.wav");
+        // check if Pacman was caught by a ghost during this step
+        if (gameState.inDeathAnimation() || gameState.getCurrentState() == Constants.GAME_OVER) {
+            boolean gameStillGoing = gameState.inDeathAnimation();
             System.out.println("Pacman caught! Game continues: " + gameStillGoing);
 
+            if (!gameStillGoing) {
+                saveGame.delete();
+                saveReplay();
+                if (highScores != null) {
+                    highScores.submit(gameState.getScore(), gameState.getLevel(), simulation.getNodes().getMazeHash());
+                }
+            }
+
             if (gameStillGoing) {
                 // Set up delay before allowing reset
                 deathDelay = true;
-                deathTimer = DEATH_DELAY;
+                uiTimers.scheduleSeconds(deathTimer, DEATH_DELAY);
             }
         }
 
@@ -209,6 +243,14 @@ public class GameController extends JPanel {
         // }
     }
 
+    // the delay after a death is over
+    private void deathDelayOver() {
+        deathDelay = false;
+
+        // during death animation we don't transition automatically - wait for user input,
+        // pressing space already put everyone back home
+    }
+
     public void render() {
         // clear the background
         screen.setColor(backgroundColor);
@@ -217,20 +259,18 @@ public class GameController extends JPanel {
         // only render game elements when not on start screen
         if (gameState.getCurrentState() != Constants.START) {
             // render nodes
-            this.nodes.render(screen);
+            simulation.getNodes().render(screen);
 
-            this.nodes.renderPellets(screen);
+            simulation.getNodes().renderPellets(screen, simulation.getPelletState());
 
             // render pacman only if not in death animation or game over
             if (gameState.getCurrentState() != Constants.GAME_OVER) {
-                this.pacman.render(screen);
+                simulation.getPacman().render(screen);
             }
 
             // render ghosts unless game over
-            if (ghostAI != null && gameState.getCurrentState() != Constants.GAME_OVER) {
-                // debug: print ghost count when rendering
-                System.out.println("Rendering " + ghostAI.getGhosts().size() + " ghosts");
-                ghostAI.render(screen);
+            if (gameState.getCurrentState() != Constants.GAME_OVER) {
+                simulation.getGhostAI().render(screen);
             }
 
             // render death animation if in that state
@@ -245,7 +285,7 @@ public class GameController extends JPanel {
 
    /* private void renderDeathAnimation(Graphics g) {
         // calculate animation progress based on death timer
-        double animationProgress = 1.0 - (deathTimer / DEATH_DELAY);
+        double animationProgress = 1.0 - (deathTimer.getSecondsLeft() / DEATH_DELAY);
 
         // get pacman position
         //int x = Pacman.get.getX();
@@ -297,38 +337,38 @@ public class GameController extends JPanel {
             gameState.startGame();
         }
 
-        // create a new maze and nodes
-        try {
-            char[][] maze = FileReader.readMazeFile("pacMaze1.txt");
-            this.nodes = new MazeGroup(maze);
-        } catch (IOException e) {
-            System.err.println("Error loading maze file: " + e.getMessage());
-            char[][] fallbackMaze = {
-                    {'X','+','X'},
-                    {'+','.','+'},
-                    {'X','+','X'}
-            };
-            this.nodes = new MazeGroup(fallbackMaze);
-        }
+        loadLevel();
 
-        // initialize ghost AI with the maze nodes
-        this.ghostAI = new GhostAI(this.nodes);
+        System.out.println("Game reset complete!");
+    }
 
-        // reset Pacman - ensure old listeners are removed
-        if (pacman != null) {
-            frame.removeKeyListener(pacman);
+    // build a fresh maze, ghosts and pacman without touching score, lives or level
+    private void loadLevel() {
+        // the old pacman stops listening to the keyboard
+        if (simulation != null) {
+            frame.removeKeyListener(simulation.getPacman());
         }
 
-        if (!this.nodes.getNodeList().isEmpty()) {
-            this.pacman = new Pacman(this.nodes.getNodeList().get(0));
-            frame.addKeyListener(pacman);
-            frame.requestFocus();
+        // the level that was being played is kept as a replay
+        saveReplay();
+
+        // create a new maze, ghosts and pacman
+        this.levelSeed = System.nanoTime();
+        this.simulation = new GameSimulation(loadMaze(), gameState, eventBus, levelSeed);
+        simulation.setFixedPoint(true); // so the replay plays back the same on any machine
+        this.recorder = new ReplayRecorder(simulation, levelSeed);
+
+        // the autopilot searches on the maze it was built for
+        if (autopilot != null) {
+            autopilot.shutdown();
+            autopilot = null;
         }
 
+        frame.addKeyListener(simulation.getPacman());
+        frame.requestFocus();
+
         // reset time tracking
         lastTime = Instant.now();
-
-        System.out.println("Game reset complete!");
     }
 
     private void handleKeyPress(KeyEvent e) {
@@ -345,9 +385,17 @@ public class GameController extends JPanel {
             case Constants.PLAYING:
                 if (key == KeyEvent.VK_P) {
                     gameState.togglePause();
+                    saveGame.save(simulation);
+                } else if (key == KeyEvent.VK_A) {
+                    // let the MCTS autopilot play (or take back control)
+                    autopilotOn = !autopilotOn;
+                    if (!autopilotOn) {
+                        simulation.getPacman().setInputDirection(Constants.STOP);
+                    }
+                    System.out.println("Autopilot " + (autopilotOn ? "on" : "off"));
                 } else if (key == KeyEvent.VK_ESCAPE) {
                     // close the application completely
-                    System.exit(0);
+                    quit();
                 }
                 break;
 
@@ -356,7 +404,7 @@ public class GameController extends JPanel {
                     gameState.togglePause();
                 } else if (key == KeyEvent.VK_ESCAPE) {
                     // close the application completely
-                    System.exit(0);
+                    quit();
                 }
                 break;
 
@@ -371,7 +419,7 @@ public class GameController extends JPanel {
                     System.out.println("Game restarted from game over!");
                 } else if (key == KeyEvent.VK_ESCAPE) {
                     // close the application completely
-                    System.exit(0);
+                    quit();
                 }
                 break;
 
@@ -381,22 +429,87 @@ public class GameController extends JPanel {
                     resetPositions();  // only reset positions, not the whole game
                 } else if (key == KeyEvent.VK_ESCAPE) {
                     // close the application completely
-                    System.exit(0);
+                    quit();
                 }
                 break;
         }
     }
 
-    //  new method to reset only positions (for death)
-    private void resetPositions() {
-        // reset pacman position
-        if (!this.nodes.getNodeList().isEmpty()) {
-            this.pacman = new Pacman(this.nodes.getNodeList().get(0));
-            frame.addKeyListener(pacman);
-            frame.requestFocus();
+    // write out the replay of the level being played, if anything was played on it
+    private void saveReplay() {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            Path file = recorder.save();
+            if (file != null) {
+                System.out.println("Replay saved to " + file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving replay: " + e.getMessage());
         }
+        recorder = null;
+    }
 
-        // reset ghost positions
-        ghostAI.resetAfterDeath();
+    // load the save file into the level just built, it comes back paused so the player can get ready
+    private void resumeSavedGame() {
+        try {
+            if (!saveGame.load(simulation)) {
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading saved game: " + e.getMessage());
+            saveGame.delete();
+            return;
+        }
+        // a replay starts from a seed, a level picked up halfway can't be played back from one
+        recorder = null;
+        if (gameState.getCurrentState() == Constants.PLAYING) {
+            gameState.togglePause();
+        }
+        System.out.println("Resumed saved game: score " + gameState.getScore() + ", level " + gameState.getLevel());
+    }
+
+    private void autosave() {
+        if (gameState.getCurrentState() == Constants.PLAYING) {
+            saveGame.save(simulation);
+        }
+        uiTimers.scheduleSeconds(autosaveTimer, SAVE_INTERVAL);
+    }
+
+    // save the game if one is going on, wait for it and the high scores to be written and close the application
+    private void quit() {
+        int state = gameState.getCurrentState();
+        if (simulation != null && (state == Constants.PLAYING || state == Constants.PAUSED
+                || state == Constants.DEATH_ANIMATION)) {
+            saveGame.save(simulation);
+        }
+        try {
+            saveGame.close();
+            // a game that ended just before quitting is still in the high score queue
+            if (highScores != null) {
+                highScores.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing high scores: " + e.getMessage());
+        }
+        System.exit(0);
+    }
+
+    // the autopilot is only built once someone switches it on
+    private MctsAutopilot getAutopilot() {
+        if (autopilot == null) {
+            autopilot = new MctsAutopilot(simulation.getNodes(), AUTOPILOT_BUDGET_MS);
+        }
+        return autopilot;
+    }
+
+    //  new method to reset only positions (for death)
+    private void resetPositions() {
+        // reset pacman and ghost positions
+        simulation.resetPositions();
+        frame.requestFocus();
     }
-}
\ No newline at end of file
+}
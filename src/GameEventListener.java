@@ -0,0 +1,6 @@
+// anything that wants to react to game events (sound, score, UI, logging) implements this
+// and subscribes to the EventBus, it gets every event of a tick in one batch
+
+public interface GameEventListener {
+    void onEvents(EventBus events);
+}
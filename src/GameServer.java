@@ -0,0 +1,431 @@
+// this class hosts many games at once for clients on the network, the server decides what happens in every game
+// a few I/O loops (each a thread with a Selector) accept clients and read their messages, and a few tick shards
+// (a thread each, one per core) step the games 60 times a second. Every game belongs to one shard for its whole
+// life, so a game is only ever stepped by one thread and needs no locks. The maze is built once and shared by
+// all games, it never changes while a game is played
+//
+// messages are a 2 byte length followed by the message, the first byte of a message is its type:
+//   client -> server  JOIN  long seed, byte 1 for deltas (optional)   start a game
+//                     INPUT byte direction     the key the player holds now
+//                     ACK   int tick           the client has decoded the DELTA of this tick
+//                     SPECTATE int game id     watch a game instead of playing one
+//   server -> client  WELCOME int id, long maze hash, byte ghost count, short pellet count
+//                     STATE int tick, int score, byte lives, byte game state, short pellets left,
+//                           short x, short y, byte direction of pacman, then short x, short y, byte behavior per ghost,
+//                           then the eaten pellets, one bit each
+//                     DELTA bit-packed changes since the newest acknowledged tick, see DeltaEncoder
+//                           (sent instead of STATE to clients that asked for deltas)
+//   server -> spectator  WELCOME of the game watched, then a DELTA of every tick, each on the tick before it
+//                        (or keyframes only for a spectator that fell behind, see Spectator)
+//
+// spectators belong to an I/O loop like players, every tick a shard publishes one shared frame per watched game
+// and wakes the I/O loops, which write the frames out to their spectators
+//
+// usage: java GameServer [port] [I/O threads] [tick threads]
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class GameServer {
+    public static final int DEFAULT_PORT = 47100;
+
+    // message types
+    public static final byte JOIN = 1;
+    public static final byte INPUT = 2;
+    public static final byte WELCOME = 3;
+    public static final byte STATE = 4;
+    public static final byte DELTA = 5;
+    public static final byte ACK = 6;
+    public static final byte SPECTATE = 7;
+
+    public static final int MAX_MESSAGE = 1024;
+    private static final long TICK_NANOS = Math.round(TimerWheel.TICK * 1e9);
+
+    private MazeGroup nodes;
+    private ServerSocketChannel server;
+    private IoLoop[] ioLoops;
+    private TickShard[] shards;
+    private AtomicInteger nextSessionId = new AtomicInteger();
+    private Map<Integer, ServerSession> sessions = new ConcurrentHashMap<>();
+    private Leaderboard leaderboard = new Leaderboard();
+    private volatile boolean running = true;
+
+    // one thread with a Selector, reads the messages of its clients and finishes writes the shards couldn't
+    private class IoLoop implements Runnable {
+        private Selector selector;
+        private ConcurrentLinkedQueue<SocketChannel> newClients = new ConcurrentLinkedQueue<>();
+        private int accepted;
+        private List<Spectator> spectators = new ArrayList<>();
+        private volatile int spectatorCount; // for the shards, the list is only touched by this loop
+        private volatile boolean framesPublished;
+
+        IoLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        // hand a client over from the accepting loop
+        void addClient(SocketChannel channel) {
+            newClients.add(channel);
+            selector.wakeup();
+        }
+
+        // the shards published new frames for spectators
+        void wakeSpectators() {
+            if (spectatorCount > 0) {
+                framesPublished = true;
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerNewClients();
+                    if (framesPublished) {
+                        framesPublished = false;
+                        pumpSpectators();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable() && connection.session != null) {
+                                connection.session.flush();
+                            }
+                            if (key.isValid() && key.isWritable() && connection.spectator != null) {
+                                connection.spectator.pump();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("I/O loop error: " + e.getMessage());
+                }
+            }
+        }
+
+        // send every spectator of this loop what's new, closed ones are dropped
+        private void pumpSpectators() {
+            for (int i = 0; i < spectators.size(); i++) {
+                Spectator spectator = spectators.get(i);
+                spectator.pump();
+                if (spectator.isClosed()) {
+                    spectators.set(i, spectators.get(spectators.size() - 1));
+                    spectators.remove(spectators.size() - 1);
+                    i--;
+                }
+            }
+            spectatorCount = spectators.size();
+        }
+
+        private void registerNewClients() throws IOException {
+            SocketChannel channel;
+            while ((channel = newClients.poll()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(this, channel, key));
+            }
+        }
+
+        // new clients are spread over the I/O loops one after the other
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                ioLoops[accepted++ % ioLoops.length].addClient(channel);
+            }
+        }
+    }
+
+    // a client connection, it becomes a player when it sends JOIN or a spectator when it sends SPECTATE
+    private class Connection {
+        IoLoop loop;
+        SocketChannel channel;
+        SelectionKey key;
+        ServerSession session;
+        Spectator spectator;
+        ByteBuffer in = ByteBuffer.allocate(MAX_MESSAGE + 2);
+
+        Connection(IoLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            // handle every whole message in the buffer
+            in.flip();
+            while (in.remaining() >= 2) {
+                int length = in.getShort(in.position()) & 0xFFFF;
+                if (length > MAX_MESSAGE) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < 2 + length) {
+                    break;
+                }
+                in.getShort();
+                int end = in.position() + length;
+                handle(in, length);
+                in.position(end);
+            }
+            in.compact();
+        }
+
+        private void handle(ByteBuffer message, int length) {
+            if (length == 0) {
+                return;
+            }
+            byte type = message.get();
+            if (session != null || spectator != null) {
+                if (type == INPUT && session != null && length >= 2) {
+                    session.setInput(message.get());
+                } else if (type == ACK && session != null && length >= 5) {
+                    session.ack(message.getInt());
+                }
+            } else if (type == JOIN && length >= 9) {
+                long seed = message.getLong();
+                boolean deltas = length >= 10 && message.get() == 1;
+                session = new ServerSession(nextSessionId.getAndIncrement(), seed, nodes, channel, key, deltas);
+                session.setLeaderboard(leaderboard);
+                session.send(welcome(session, nodes));
+                sessions.put(session.getId(), session);
+                shards[session.getId() % shards.length].add(session);
+            } else if (type == SPECTATE && length >= 5) {
+                ServerSession watched = sessions.get(message.getInt());
+                if (watched == null) {
+                    close();
+                    return;
+                }
+                ByteBuffer welcome = welcome(watched, nodes);
+                ByteBuffer framed = ByteBuffer.allocate(2 + welcome.remaining());
+                framed.putShort((short) welcome.remaining()).put(welcome).flip();
+                try {
+                    channel.write(framed); // a fresh socket always has room for it
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                spectator = new Spectator(channel, key, watched.getFeed());
+                loop.spectators.add(spectator);
+                loop.spectatorCount = loop.spectators.size();
+            }
+        }
+
+        void close() {
+            if (session != null) {
+                session.close(); // the shard drops it on its next tick
+            } else if (spectator != null) {
+                spectator.close(); // the loop drops it when it next pumps
+            } else {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    // one thread stepping its games 60 times a second, ticks are paced by the clock, not by how long they take
+    private class TickShard implements Runnable {
+        private List<ServerSession> sessions = new ArrayList<>();
+        private ConcurrentLinkedQueue<ServerSession> newSessions = new ConcurrentLinkedQueue<>();
+
+        // stats, read by the stats printer without locking (they are only ever a rough picture)
+        volatile int sessionCount;
+        volatile long maxTickNanos;
+        volatile long lateTicks;
+        private long totalTickNanos;
+        private long ticks;
+
+        void add(ServerSession session) {
+            newSessions.add(session);
+        }
+
+        @Override
+        public void run() {
+            long nextTick = System.nanoTime();
+            while (running) {
+                long start = System.nanoTime();
+                ServerSession added;
+                while ((added = newSessions.poll()) != null) {
+                    sessions.add(added);
+                }
+
+                // step every game, closed ones are dropped (swap with the last one, order doesn't matter)
+                for (int i = 0; i < sessions.size(); i++) {
+                    ServerSession session = sessions.get(i);
+                    if (session.isClosed()) {
+                        GameServer.this.sessions.remove(session.getId());
+                        sessions.set(i, sessions.get(sessions.size() - 1));
+                        sessions.remove(sessions.size() - 1);
+                        i--;
+                        continue;
+                    }
+                    session.tick();
+                }
+                sessionCount = sessions.size();
+                for (IoLoop loop : ioLoops) {
+                    loop.wakeSpectators();
+                }
+
+                long took = System.nanoTime() - start;
+                totalTickNanos += took;
+                ticks++;
+                maxTickNanos = Math.max(maxTickNanos, took);
+
+                // wait for the next tick, if we fell more than a tick behind don't try to catch up
+                nextTick += TICK_NANOS;
+                long now = System.nanoTime();
+                if (now - nextTick > TICK_NANOS) {
+                    lateTicks++;
+                    nextTick = now;
+                }
+                while ((now = System.nanoTime()) < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                }
+            }
+        }
+
+        // average tick time since the last call, in ms
+        double takeAverageMs() {
+            double average = ticks == 0 ? 0 : totalTickNanos / (double) ticks / 1e6;
+            totalTickNanos = 0;
+            ticks = 0;
+            return average;
+        }
+    }
+
+    // the WELCOME message for a new game
+    static ByteBuffer welcome(ServerSession session, MazeGroup nodes) {
+        ByteBuffer welcome = ByteBuffer.allocate(16);
+        welcome.put(WELCOME).putInt(session.getId()).putLong(nodes.getMazeHash())
+                .put((byte) session.getSimulation().getGhostAI().getGhosts().size())
+                .putShort((short) nodes.getPellets().size());
+        welcome.flip();
+        return welcome;
+    }
+
+    public GameServer(MazeGroup nodes, int port, int ioThreads, int tickThreads) throws IOException {
+        this.nodes = nodes;
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+
+        ioLoops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            ioLoops[i] = new IoLoop();
+        }
+        server.register(ioLoops[0].selector, SelectionKey.OP_ACCEPT);
+
+        shards = new TickShard[tickThreads];
+        for (int i = 0; i < tickThreads; i++) {
+            shards[i] = new TickShard();
+        }
+    }
+
+    public void start() {
+        leaderboard.start();
+        for (int i = 0; i < ioLoops.length; i++) {
+            Thread thread = new Thread(ioLoops[i], "io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        for (int i = 0; i < shards.length; i++) {
+            Thread thread = new Thread(shards[i], "tick-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        leaderboard.stop();
+        for (IoLoop loop : ioLoops) {
+            loop.selector.wakeup();
+        }
+        server.close();
+    }
+
+    // games, spectators and today's leaderboard, then one line per shard: games, average and slowest tick,
+    // ticks that came late
+    public void printStats() {
+        int total = 0;
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < shards.length; i++) {
+            TickShard shard = shards[i];
+            total += shard.sessionCount;
+            line.append(String.format("  shard %d: %d games, tick %.2f ms avg %.2f ms max, %d late%n",
+                    i, shard.sessionCount, shard.takeAverageMs(), shard.maxTickNanos / 1e6, shard.lateTicks));
+            shard.maxTickNanos = 0;
+        }
+        int spectators = 0;
+        for (IoLoop loop : ioLoops) {
+            spectators += loop.spectatorCount;
+        }
+        List<Leaderboard.Entry> best = leaderboard.getTop(Leaderboard.DAILY, 1);
+        System.out.print(total + " games, " + spectators + " spectators, "
+                + leaderboard.getCount(Leaderboard.DAILY) + " finished today"
+                + (best.isEmpty() ? "" : ", best " + best.get(0)) + "\n" + line);
+    }
+
+    // the board every game of this server goes on, for whoever embeds the server to query
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int ioThreads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, cores / 4);
+        int tickThreads = args.length > 2 ? Integer.parseInt(args[2]) : cores;
+
+        GameServer gameServer = new GameServer(new MazeGroup(FileReader.readMazeFile("pacMaze1.txt")),
+                port, ioThreads, tickThreads);
+        gameServer.start();
+        System.out.println("Game server on port " + port + " with " + ioThreads + " I/O threads and "
+                + tickThreads + " tick threads");
+        while (true) {
+            Thread.sleep(5000);
+            gameServer.printStats();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+// this class is the game itself without a window: the maze, pacman, the ghosts and the rules that tie them together
+// GameController drives it with the keyboard and draws it, PacmanEnv drives it headless for training agents
+
+import java.util.List;
+
+public class GameSimulation {
+    // how close pacman has to get to a pellet to eat it (squared, in pixels)
+    private static final double PELLET_RADIUS_SQUARED = 10 * 10;
+
+    private MazeGroup nodes;
+    private Pacman pacman;
+    private GhostAI ghostAI;
+    private GameState gameState;
+    private EventBus eventBus;
+    private PelletState pelletState;
+    private TimerWheel timers; // game time, every game timer runs on it
+    private RngService rng;    // every random number in the game comes from the seed it was started with
+    private StateHash stateHash;
+
+    // set up a game on an already built maze, events (score, sound, ...) go out through the given bus
+    // the maze itself is never changed, so several simulations can share one MazeGroup
+    public GameSimulation(MazeGroup nodes, GameState gameState, EventBus eventBus, long seed) {
+        this(nodes, gameState, eventBus, seed, GhostAI.DEFAULT_GHOST_COUNT);
+    }
+
+    // same, with a swarm of ghostCount ghosts instead of the usual four
+    public GameSimulation(MazeGroup nodes, GameState gameState, EventBus eventBus, long seed, int ghostCount) {
+        this.nodes = nodes;
+        this.gameState = gameState;
+        this.eventBus = eventBus;
+        this.timers = new TimerWheel();
+        this.rng = new RngService(seed);
+        this.ghostAI = new GhostAI(nodes, rng, ghostCount, timers);
+        this.pacman = new Pacman(getPacmanStartNode());
+        pacman.setTimers(timers);
+        this.pelletState = new PelletState(nodes.getPellets().size());
+    }
+
+    // start over on the same maze: all pellets back, everyone back home, fresh stats
+    public void reset(long seed) {
+        pelletState.reset();
+        gameState.startGame();
+        pacman.reset(getPacmanStartNode());
+        ghostAI.resetForNewGame(seed);
+    }
+
+    // advance the game by dt seconds, this does nothing unless the game is being played
+    public void step(double dt) {
+        if (!gameState.isPlaying()) {
+            return;
+        }
+
+        // timers that run out in this step go off first (mode switches, ghost releases, animations)
+        timers.advance(dt);
+
+        // update pacman with the time
+        pacman.update(dt);
+
+        eatPellets();
+
+        // update ghosts
+        ghostAI.update(dt, pacman);
+
+        // check if Pacman was caught by a ghost at any point of this tick
+        if (ghostAI.checkPacmanCaught(pacman.getPreviousPosition(), pacman.getPosition())) {
+            gameState.pacmanDeath();
+            eventBus.publish(Constants.PACMAN_DIED, gameState.getLives());
+        }
+    }
+
+    // eat every pellet pacman touched on his way this tick, the score is handed out when the events are dispatched
+    // pacman moves in a straight line each tick, so only the tiles around that line can have pellets he touched
+    private void eatPellets() {
+        List<Pellet> pellets = nodes.getPellets();
+        double fromX = pacman.getPreviousPosition().getX();
+        double fromY = pacman.getPreviousPosition().getY();
+        double pathX = pacman.getPosition().getX() - fromX;
+        double pathY = pacman.getPosition().getY() - fromY;
+        double pathSquared = pathX * pathX + pathY * pathY;
+        boolean pelletEaten = false;
+
+        // tiles the path and the pickup radius around it cover
+        double radius = Math.sqrt(PELLET_RADIUS_SQUARED);
+        int minCol = (int) Math.floor((Math.min(fromX, fromX + pathX) - radius) / Constants.TILE_WIDTH);
+        int maxCol = (int) Math.floor((Math.max(fromX, fromX + pathX) + radius) / Constants.TILE_WIDTH);
+        int minRow = (int) Math.floor((Math.min(fromY, fromY + pathY) - radius) / Constants.TILE_HEIGHT);
+        int maxRow = (int) Math.floor((Math.max(fromY, fromY + pathY) + radius) / Constants.TILE_HEIGHT);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                int i = nodes.getPelletAt(col, row);
+                if (i < 0 || pelletState.isEaten(i)) {
+                    continue;
+                }
+
+                // closest point of the path to the pellet
+                Vector pos = pellets.get(i).getPosition();
+                double dx = pos.getX() - fromX;
+                double dy = pos.getY() - fromY;
+                if (pathSquared > 0) {
+                    double t = Math.max(0, Math.min(1, (dx * pathX + dy * pathY) / pathSquared));
+                    dx -= pathX * t;
+                    dy -= pathY * t;
+                }
+                if (dx * dx + dy * dy < PELLET_RADIUS_SQUARED) { // Pacman close enough
+                    pelletState.eat(i);
+                    pelletEaten = true;
+                    eventBus.publish(Constants.PELLET_EATEN, i);
+                }
+            }
+        }
+
+        // the last pellet was eaten this tick
+        if (pelletEaten && pelletState.getLeft() == 0) {
+            eventBus.publish(Constants.LEVEL_CLEARED, gameState.getLevel());
+        }
+    }
+
+    // keep every position in 16.16 fixed point and move with int math, so runs come out bit for bit the same anywhere
+    public void setFixedPoint(boolean fixedPoint) {
+        pacman.setFixedPoint(fixedPoint);
+        ghostAI.setFixedPoint(fixedPoint);
+    }
+
+    // 64 bit hash of the whole game state, two runs that stay in step give the same hash on every tick
+    public long getStateHash() {
+        if (stateHash == null) {
+            stateHash = new StateHash(this);
+        }
+        return stateHash.compute();
+    }
+
+    // after a death put pacman and the ghosts back home and keep playing
+    public void resetPositions() {
+        pacman.reset(getPacmanStartNode());
+        ghostAI.resetAfterDeath();
+    }
+
+    private Maze getPacmanStartNode() {
+        if (nodes.getNodeList().isEmpty()) {
+            System.err.println("Node list is empty");
+            return new Maze(200, 400);
+        }
+        return nodes.getNodeList().get(0);
+    }
+
+    // getters
+
+    public MazeGroup getNodes() {
+        return nodes;
+    }
+
+    public Pacman getPacman() {
+        return pacman;
+    }
+
+    public GhostAI getGhostAI() {
+        return ghostAI;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    public RngService getRng() {
+        return rng;
+    }
+
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    public PelletState getPelletState() {
+        return pelletState;
+    }
+
+    public int getPelletsLeft() {
+        return pelletState.getLeft();
+    }
+}
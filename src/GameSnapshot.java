@@ -0,0 +1,189 @@
+// this class is a cheap copy of everything that changes while a GameSimulation runs, so search bots can
+// fork a game, play ahead, and jump back. The maze (nodes, pellet positions) never changes, so it is
+// shared by reference; the rest is a few primitive arrays. The eaten pellets are copy-on-write: the
+// snapshot and the game share one bit array until the game eats its next pellet.
+//
+// state layout: GameState, Pacman, GhostAI timers, then each ghost (see their saveState methods)
+//
+// write()/read() put a snapshot in a byte buffer for SaveGame, all numbers big-endian:
+//   varint pellets left, long pellet hash, the eaten bits as longs,
+//   a long per ghost (its random state),
+//   a bit mask of which state numbers are whole (one long per 64 numbers), then the numbers in order:
+//   whole ones as zigzag varints (1 or 2 bytes for nodes, directions, timers), the rest as doubles
+
+import java.nio.ByteBuffer;
+
+public class GameSnapshot {
+    private MazeGroup nodes;
+    private double[] state;
+    private long[] ghostRandomStates;
+    private long[] eatenPellets;
+    private int pelletsLeft;
+    private long pelletHash;
+
+    private GameSnapshot(GameSimulation simulation) {
+        this.nodes = simulation.getNodes();
+        int ghostCount = simulation.getGhostAI().getGhosts().size();
+        this.state = new double[GameState.STATE_SIZE + Pacman.STATE_SIZE
+                + simulation.getGhostAI().getStateSize() + ghostCount * Ghost.STATE_SIZE];
+        this.ghostRandomStates = new long[ghostCount];
+    }
+
+    // take a new snapshot of the simulation
+    public static GameSnapshot capture(GameSimulation simulation) {
+        GameSnapshot snapshot = new GameSnapshot(simulation);
+        snapshot.captureFrom(simulation);
+        return snapshot;
+    }
+
+    // overwrite this snapshot with the current state of the simulation, nothing is allocated
+    public void captureFrom(GameSimulation simulation) {
+        checkSameGame(simulation);
+
+        int offset = simulation.getGameState().saveState(state, 0);
+        offset = simulation.getPacman().saveState(state, offset);
+        GhostAI ghostAI = simulation.getGhostAI();
+        offset = ghostAI.saveState(state, offset);
+        for (int i = 0; i < ghostRandomStates.length; i++) {
+            Ghost ghost = ghostAI.getGhosts().get(i);
+            offset = ghost.saveState(state, offset);
+            ghostRandomStates[i] = ghost.getRandomState();
+        }
+
+        eatenPellets = simulation.getPelletState().share();
+        pelletsLeft = simulation.getPelletState().getLeft();
+        pelletHash = simulation.getPelletState().getHash();
+    }
+
+    // put the simulation back to the moment this snapshot was taken, it must be a game on the same maze
+    // with the same number of ghosts (a fork made from the same MazeGroup, or the original itself)
+    public void restore(GameSimulation simulation) {
+        checkSameGame(simulation);
+
+        int offset = simulation.getGameState().loadState(state, 0);
+        offset = simulation.getPacman().loadState(state, offset, nodes);
+        GhostAI ghostAI = simulation.getGhostAI();
+        offset = ghostAI.loadState(state, offset);
+        for (int i = 0; i < ghostRandomStates.length; i++) {
+            offset = ghostAI.getGhosts().get(i).loadState(state, offset, nodes, ghostRandomStates[i]);
+        }
+
+        simulation.getPelletState().adopt(eatenPellets, pelletsLeft, pelletHash);
+
+        // events from the abandoned future don't belong to this game
+        simulation.getEventBus().clear();
+    }
+
+    private void checkSameGame(GameSimulation simulation) {
+        if (simulation.getNodes() != nodes
+                || simulation.getGhostAI().getGhosts().size() != ghostRandomStates.length) {
+            throw new IllegalArgumentException("Snapshot belongs to a game on a different maze");
+        }
+    }
+
+    // write the snapshot into buffer, it needs at most getMaxBytes() bytes
+    public void write(ByteBuffer buffer) {
+        writeVarint(buffer, pelletsLeft);
+        buffer.putLong(pelletHash);
+        for (long bits : eatenPellets) {
+            buffer.putLong(bits);
+        }
+        for (long randomState : ghostRandomStates) {
+            buffer.putLong(randomState);
+        }
+
+        for (int i = 0; i < state.length; i += 64) {
+            long whole = 0;
+            for (int j = i; j < Math.min(state.length, i + 64); j++) {
+                if (isWhole(state[j])) {
+                    whole |= 1L << j;
+                }
+            }
+            buffer.putLong(whole);
+        }
+        for (double value : state) {
+            if (isWhole(value)) {
+                long number = (long) value;
+                writeVarint(buffer, (number << 1) ^ (number >> 63));
+            } else {
+                buffer.putDouble(value);
+            }
+        }
+    }
+
+    // read back what write() put in the buffer, into this snapshot (one taken of a game on the same maze)
+    public void read(ByteBuffer buffer) {
+        pelletsLeft = (int) readVarint(buffer);
+        pelletHash = buffer.getLong();
+        // a new array: the old one may be shared with the game
+        eatenPellets = new long[eatenPellets.length];
+        for (int i = 0; i < eatenPellets.length; i++) {
+            eatenPellets[i] = buffer.getLong();
+        }
+        for (int i = 0; i < ghostRandomStates.length; i++) {
+            ghostRandomStates[i] = buffer.getLong();
+        }
+
+        long[] whole = new long[(state.length + 63) / 64];
+        for (int i = 0; i < whole.length; i++) {
+            whole[i] = buffer.getLong();
+        }
+        for (int i = 0; i < state.length; i++) {
+            if ((whole[i >>> 6] & (1L << i)) != 0) {
+                long number = readVarint(buffer);
+                state[i] = (number >>> 1) ^ -(number & 1);
+            } else {
+                state[i] = buffer.getDouble();
+            }
+        }
+        if (pelletsLeft < 0 || pelletsLeft > nodes.getPellets().size()) {
+            throw new IllegalArgumentException("Bad pellet count " + pelletsLeft);
+        }
+    }
+
+    // bytes write() can take at most, grows with the pellets and the ghosts
+    public int getMaxBytes() {
+        return 5 + 8 + eatenPellets.length * 8 + ghostRandomStates.length * 8
+                + (state.length + 63) / 64 * 8 + state.length * 10;
+    }
+
+    // a number write() can keep as a varint without losing anything (-0.0 is kept as a double)
+    private static boolean isWhole(double value) {
+        return value == (long) value && Math.abs(value) < 1L << 53
+                && (value != 0 || Double.doubleToRawLongBits(value) == 0);
+    }
+
+    private static void writeVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    // getters
+
+    public MazeGroup getNodes() {
+        return nodes;
+    }
+
+    public int getPelletsLeft() {
+        return pelletsLeft;
+    }
+
+    public int getGhostCount() {
+        return ghostRandomStates.length;
+    }
+}
@@ -1,6 +1,6 @@
 // this class will manage the current state of the game (START, PLAYING, PAUSED, GAME_OVER) and implement the transitions from each state
 
-public class GameState {
+public class GameState implements GameEventListener {
 
     // current state of the game
     private int currentState;
@@ -10,6 +10,9 @@ public class GameState {
     private int lives;
     private int level;
 
+    // how many numbers saveState/loadState use
+    public static final int STATE_SIZE = 4;
+
     // initialize the game to start
     public GameState() {
         this.currentState = Constants.START;
@@ -85,6 +88,42 @@ public class GameState {
         this.level++;
     }
 
+    // apply the score side of this tick's events
+    @Override
+    public void onEvents(EventBus events) {
+        for (int i = 0; i < events.size(); i++) {
+            switch (events.getType(i)) {
+                case Constants.PELLET_EATEN:
+                    addScore(Constants.DOT_SCORE);
+                    break;
+                case Constants.GHOST_EATEN:
+                    addScore(Constants.GHOST_SCORE);
+                    break;
+                case Constants.LEVEL_CLEARED:
+                    completeLevel();
+                    break;
+            }
+        }
+    }
+
+    // write the state and stats into state starting at offset, returns the offset after them
+    public int saveState(double[] state, int offset) {
+        state[offset] = currentState;
+        state[offset + 1] = score;
+        state[offset + 2] = lives;
+        state[offset + 3] = level;
+        return offset + STATE_SIZE;
+    }
+
+    // read back what saveState wrote
+    public int loadState(double[] state, int offset) {
+        currentState = (int) state[offset];
+        score = (int) state[offset + 1];
+        lives = (int) state[offset + 2];
+        level = (int) state[offset + 3];
+        return offset + STATE_SIZE;
+    }
+
     // getters for game state
 
     public int getCurrentState() {
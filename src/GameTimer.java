@@ -0,0 +1,49 @@
+// this class is one timer on a TimerWheel: a task that runs once when its tick comes up
+// the same timer can be scheduled again and again (from its own task too), so nothing has to be allocated
+// while the game runs, and cancel() takes it off the wheel before it goes off
+
+public class GameTimer {
+    private Runnable task;
+    TimerWheel wheel;
+
+    // when it goes off, and its place in the list of its wheel slot
+    long deadline;
+    GameTimer previous;
+    GameTimer next;
+    boolean scheduled;   // on the wheel, waiting for its tick
+    boolean due;         // taken off the wheel this tick, its task runs unless it is cancelled first
+
+    public GameTimer(Runnable task) {
+        this.task = task;
+    }
+
+    // take the timer off its wheel, nothing happens if it isn't on one
+    public void cancel() {
+        due = false;
+        if (scheduled) {
+            wheel.remove(this);
+        }
+    }
+
+    // true while the timer is waiting to go off
+    public boolean isActive() {
+        return scheduled || due;
+    }
+
+    // whole ticks until the timer goes off, 0 if it isn't active
+    public long getTicksLeft() {
+        return isActive() ? Math.max(0, deadline - wheel.getTick()) : 0;
+    }
+
+    // seconds of game time until the timer goes off, infinite if it isn't active
+    public double getSecondsLeft() {
+        if (!isActive()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(0, getTicksLeft() * TimerWheel.TICK - wheel.getPendingTime());
+    }
+
+    void run() {
+        task.run();
+    }
+}
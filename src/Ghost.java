@@ -3,13 +3,14 @@
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.List;
-import java.util.Random;
 
 public class Ghost {
     // ghost identification and their properties
     private int ghostType;       // which ghost is which(Blinky, Pinky, Clyde. etc.)
     private Vector position;     // current position on screen
     private Vector startPosition; // starting position to return to
+    private Vector previousPosition; // where the last move started, the ghost went in a straight line from there
+    private Maze startNode;      // node the starting position belongs to
     private int behavior;        // current behavior mode
     private int direction;
     private double speed;
@@ -22,13 +23,45 @@ public class Ghost {
     private Maze scatterTarget;// corner node to move to when in scatter mode
 
 
-    // target in chase mode (usually Pacman or a position near Pacman)
-    private Vector chaseTarget;
-    private Random random;
+    // target tile in chase mode (usually Pacman or a tile near Pacman), picked by the targeting strategy
+    private TargetingStrategy targeting;
+    private int[] chaseTile;
+
+    // shortest path distances through the maze, without it the ghost goes by straight line distance
+    private DistanceField distances;
+
+    // random number generator for frightened mode (splitmix64), the whole generator is this one long
+    // so a snapshot of the game can save and restore it
+    private long randomState;
+
+    // in fixed point mode the position is kept in fixedX and fixedY (16.16, see FixedPoint), moving and the node
+    // checks are int math. position and previousPosition are then the ghost's own two vectors, filled in from the
+    // ints after every move for drawing and collisions
+    private boolean fixedPoint;
+    private int fixedX;
+    private int fixedY;
+    private int fixedStep; // fixed point pixels moved per move, worked out again when the speed or dt change
+    private double fixedStepSpeed = -1;
+    private double fixedStepDt = -1;
+
+    // last mode broadcast from GhostAI this ghost has acted on
+    private int modeVersion;
+
+    // a player can steer the ghost instead of the AI (head to head games), the held direction is set every tick
+    private boolean playerControlled;
+    private int inputDirection = Constants.STOP;
+
+    // how many numbers saveState/loadState use
+    public static final int STATE_SIZE = 7;
 
 
     // creating new ghost with a specific behaviors
     public Ghost(int ghostType, Maze startNode, Maze scatterNode, Color ghostColor) {
+        this(ghostType, startNode, scatterNode, ghostColor, System.nanoTime());
+    }
+
+    // same as above but with a seed for the random movement, so frightened movement can be repeated
+    public Ghost(int ghostType, Maze startNode, Maze scatterNode, Color ghostColor, long seed) {
         this.ghostType = ghostType;
         this.behavior = Constants.SCATTER; // ghost will always start in scatter mode, which is random
 
@@ -37,6 +70,8 @@ public class Ghost {
         this.targetNode = startNode;
         this.position = startNode.getPosition().copy();
         this.startPosition = this.position.copy();
+        this.previousPosition = this.position;
+        this.startNode = startNode;
         this.scatterTarget = scatterNode;
 
         // set movement properties
@@ -45,27 +80,47 @@ public class Ghost {
         this.radius = 8;
         this.color = ghostColor;
 
-        // initialize random number generator
-        this.random = new Random();
+        this.randomState = seed;
 
         // initialize chase target
-        this.chaseTarget = new Vector(0, 0);
+        this.targeting = new BlinkyTargeting();
+        this.chaseTile = new int[2];
     }
 
 
     // updates the ghost's position and behavior, dt represents the time since last update
-    public void update(double dt, Pacman pacman) {
-        // update chase target based on Pacman's position
-        updateChaseTarget(pacman);
+    // the other ghosts are passed along for strategies that work together (inky needs blinky)
+    public void update(double dt, Pacman pacman, List<Ghost> ghosts) {
+        chooseTarget(pacman, ghosts);
+        move(dt);
+    }
+
+    // update chase target based on Pacman's position, this only reads the other ghosts
+    // so all ghosts can pick their targets at the same time before any of them moves
+    public void chooseTarget(Pacman pacman, List<Ghost> ghosts) {
+        targeting.chooseTarget(this, pacman, ghosts, chaseTile);
+    }
+
+    // move for dt seconds towards the target picked by chooseTarget
+    public void move(double dt) {
+        if (fixedPoint) {
+            // the vector of the last move becomes the previous one, the other one is filled in at the end
+            Vector spare = previousPosition;
+            previousPosition = position;
+            position = spare;
+        } else {
+            // position is replaced while moving, never changed in place, so the old one can be kept as it is
+            previousPosition = position;
+        }
 
         // handle movement based on current behavior
         switch (behavior) {
             case Constants.CHASE:
-                moveTowards(dt, pacman.getPosition());
+                moveTowards(dt, chaseTile[0], chaseTile[1]);
                 break;
 
             case Constants.SCATTER:
-                moveTowards(dt, scatterTarget.getPosition());
+                moveTowards(dt, scatterTarget.getCol(), scatterTarget.getRow());
                 break;
 
             case Constants.FRIGHTENED:
@@ -73,65 +128,38 @@ public class Ghost {
                 break;
 
             case Constants.EATEN:
-                moveTowards(dt, startPosition);
+                moveTowards(dt, startNode.getCol(), startNode.getRow());
                 // check if we've reached the start position to respawn
-                if (position.subtract(startPosition).magnitudeSquared() < 4) {
+                if (isNearStart()) {
                     respawn();
                 }
                 break;
         }
 
-    }
-
-    // upadte the chase target based on the ghost type (differnt targtes for each ghost)
-    private void updateChaseTarget(Pacman pacman) {
-        Vector pacmanPos = pacman.getPosition();
-        Vector pacmanDir = pacman.getDirection();
-
-        // different targeting based on ghost type
-        switch (ghostType) {
-            case 0: // Blinky (red) - targets Pacman directly
-                chaseTarget = pacmanPos;
-                break;
-
-            case 1: // Pinky (pink) - targets 4 tiles ahead of Pacman
-                chaseTarget = pacmanPos.add(pacmanDir.multiply(4 * Constants.TILE_WIDTH));
-                break;
-
-            case 2: // Inky (cyan) - complex targeting involving blinky's position
-                // simple for now - targets 2 tiles ahead of Pacman
-                chaseTarget = pacmanPos.add(pacmanDir.multiply(2 * Constants.TILE_WIDTH));
-                break;
-
-            case 3: // Clyde (orange) - targets Pacman unless too close, then scatters
-                double distance = pacmanPos.subtract(position).magnitude();
-                if (distance > 8 * Constants.TILE_WIDTH) {
-                    chaseTarget = pacmanPos;
-                } else {
-                    chaseTarget = scatterTarget.getPosition();
-                }
-                break;
+        if (fixedPoint) {
+            syncPosition(false);
         }
-    }
-
 
-    // move torwards a specifc target position using the node-based movements
-    private void moveTowards(double dt, Vector target) {
-        // calculate movement vector based on current direction
-        Vector movement = getDirectionVector(direction);
-        movement = movement.multiply(speed * dt);
+    }
 
-        // update position
-        position = position.add(movement);
+    // move torwards a specifc target tile using the node-based movements
+    private void moveTowards(double dt, int targetCol, int targetRow) {
+        // update position based on current direction
+        step(speed, dt);
 
         // check if we've reached or overshot the target node
         if (hasReachedOrOvershotNode()) {
             // reached a node take a new directon
             currentNode = targetNode;
-            position = currentNode.getPosition().copy();
-
-            // choose next direction based on target
-            direction = chooseNextDirection(target);
+            snapToNode();
+
+            // choose next direction based on target, or the one the player holds (not while frightened or eaten)
+            if (playerControlled && behavior != Constants.FRIGHTENED && behavior != Constants.EATEN
+                    && canTurn(inputDirection)) {
+                direction = inputDirection;
+            } else {
+                direction = chooseNextDirection(targetCol, targetRow);
+            }
 
             // set new target node based on chosen direction
             targetNode = getNextNode(direction);
@@ -141,16 +169,13 @@ public class Ghost {
 
     // move in a random direction in frighten mode (pacman power up)
     private void moveRandomly(double dt) {
-        Vector movement = getDirectionVector(direction);
-        movement = movement.multiply(speed * 0.5 * dt); // move slower when frightened
-
-        // update position
-        position = position.add(movement);
+        // update position, move slower when frightened
+        step(speed * 0.5, dt);
 
         // check if we've reached or overshot the target node
         if (hasReachedOrOvershotNode()) {
             currentNode = targetNode;
-            position = currentNode.getPosition().copy();
+            snapToNode();
 
             // choose next direction randomly
             direction = chooseRandomDirection();
@@ -160,8 +185,66 @@ public class Ghost {
         }
     }
 
+    // move along the current direction at the given speed for dt seconds
+    private void step(double currentSpeed, double dt) {
+        if (fixedPoint) {
+            int distance = fixedStep(currentSpeed, dt);
+            fixedX += Maze.directionX(direction) * distance;
+            fixedY += Maze.directionY(direction) * distance;
+        } else {
+            position = position.add(getDirectionVector(direction).multiply(currentSpeed * dt));
+        }
+    }
+
+    // fixed point pixels moved in dt seconds, the speed only changes with the behavior so the answer is kept
+    private int fixedStep(double currentSpeed, double dt) {
+        if (currentSpeed != fixedStepSpeed || dt != fixedStepDt) {
+            fixedStep = FixedPoint.multiply(FixedPoint.fromDouble(currentSpeed), FixedPoint.fromDouble(dt));
+            fixedStepSpeed = currentSpeed;
+            fixedStepDt = dt;
+        }
+        return fixedStep;
+    }
+
+    // put the ghost exactly on its current node
+    private void snapToNode() {
+        if (fixedPoint) {
+            fixedX = currentNode.getFixedX();
+            fixedY = currentNode.getFixedY();
+        } else {
+            position = currentNode.getPosition().copy();
+        }
+    }
+
+    // an eaten ghost is home when it is within 2 pixels of where it started
+    private boolean isNearStart() {
+        if (fixedPoint) {
+            long dx = fixedX - startNode.getFixedX();
+            long dy = fixedY - startNode.getFixedY();
+            return dx * dx + dy * dy < 4L * FixedPoint.ONE * FixedPoint.ONE;
+        }
+        return position.subtract(startPosition).magnitudeSquared() < 4;
+    }
+
+    // fill in the position vector from the fixed point position, and previousPosition as well if the ghost stayed put
+    private void syncPosition(boolean stayed) {
+        position.setX(FixedPoint.toDouble(fixedX));
+        position.setY(FixedPoint.toDouble(fixedY));
+        if (stayed) {
+            previousPosition.setX(position.getX());
+            previousPosition.setY(position.getY());
+        }
+    }
+
     // return true if reached or overshot the target node, OW false
     private boolean hasReachedOrOvershotNode() {
+        if (targetNode != null && fixedPoint) {
+            long toTargetX = targetNode.getFixedX() - currentNode.getFixedX();
+            long toTargetY = targetNode.getFixedY() - currentNode.getFixedY();
+            long toSelfX = fixedX - currentNode.getFixedX();
+            long toSelfY = fixedY - currentNode.getFixedY();
+            return toSelfX * toSelfX + toSelfY * toSelfY >= toTargetX * toTargetX + toTargetY * toTargetY;
+        }
         if (targetNode != null) {
             Vector nodeToTarget = targetNode.getPosition().subtract(currentNode.getPosition());
             Vector nodeToSelf = position.subtract(currentNode.getPosition());
@@ -174,75 +257,76 @@ public class Ghost {
         return false;
     }
 
-    // choose the next direction based on target position, AI path-finding algorithm
-    private int chooseNextDirection(Vector target) {
-        // get all available directions, or nodes that are connected to current node
-        List<Integer> availableDirections = getAvailableDirections();
+    // true if the current node has an exit that way and it isn't turning back (ghosts never reverse on their own)
+    private boolean canTurn(int direction) {
+        return direction != Constants.STOP && direction != -this.direction
+                && (currentNode.getExitMask() & Maze.directionBit(direction)) != 0;
+    }
 
-        // remove opposite direction to prevent 180-degree turns
-        int oppositeDir = -direction;
-        availableDirections.removeIf(dir -> dir == oppositeDir);
+    // choose the next direction based on target tile, AI path-finding algorithm
+    private int chooseNextDirection(int targetCol, int targetRow) {
+        // exits of the current node, without the opposite direction to prevent 180-degree turns
+        int exits = currentNode.getExitMask() & ~Maze.directionBit(-direction);
 
         // if no valid directions, reverse
-        if (availableDirections.isEmpty()) {
-            availableDirections.add(oppositeDir);
+        if (exits == 0) {
+            return -direction;
         }
 
+        // when the target is on a node, go by the real distance through the maze
+        Maze targetNode = distances != null ? distances.nodeAt(targetCol, targetRow) : null;
+        int[] field = targetNode != null ? distances.from(targetNode) : null;
+
         // find direction that gets closest to target
         int bestDirection = Constants.STOP;
-        double bestDistance = Double.MAX_VALUE;
-
-        for (int dir : availableDirections) {
-            Maze nextNode = getNextNode(dir);
-            if (nextNode != null) {
-                double distance = nextNode.getPosition().subtract(target).magnitudeSquared();
-                if (distance < bestDistance) {
-                    bestDistance = distance;
-                    bestDirection = dir;
-                }
+        int bestDistance = Integer.MAX_VALUE;
+
+        while (exits != 0) {
+            int index = Integer.numberOfTrailingZeros(exits);
+            exits &= exits - 1;
+
+            Maze nextNode = currentNode.getNeighbors()[index];
+            int distance;
+            if (field != null) {
+                distance = DistanceField.edgeLength(currentNode, nextNode) + field[nextNode.getIndex()];
+            } else {
+                int dCol = nextNode.getCol() - targetCol;
+                int dRow = nextNode.getRow() - targetRow;
+                distance = dCol * dCol + dRow * dRow;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestDirection = Maze.DIRECTIONS[index];
             }
         }
 
-        return bestDirection == Constants.STOP ? chooseRandomDirection() : bestDirection;
+        return bestDirection;
     }
 
 
     // choose a random direction to move
     private int chooseRandomDirection() {
-        List<Integer> availableDirections = getAvailableDirections();
-
         // remove opposite direction
-        int oppositeDir = -direction;
-        availableDirections.removeIf(dir -> dir == oppositeDir);
+        int exits = currentNode.getExitMask() & ~Maze.directionBit(-direction);
 
         // revsersing
-        if (availableDirections.isEmpty()) {
-            availableDirections.add(oppositeDir);
+        if (exits == 0) {
+            return -direction;
         }
 
-        // random direction if available
-        return availableDirections.get(random.nextInt(availableDirections.size()));
-    }
-
-    // creating a list of all available directions from the current node
-    private List<Integer> getAvailableDirections() {
-        java.util.ArrayList<Integer> directions = new java.util.ArrayList<>();
-
-        // check each direction for connected nodes
-        if (currentNode.getNeighbor(Constants.UP) != null) {
-            directions.add(Constants.UP);
-        }
-        if (currentNode.getNeighbor(Constants.DOWN) != null) {
-            directions.add(Constants.DOWN);
-        }
-        if (currentNode.getNeighbor(Constants.LEFT) != null) {
-            directions.add(Constants.LEFT);
-        }
-        if (currentNode.getNeighbor(Constants.RIGHT) != null) {
-            directions.add(Constants.RIGHT);
+        // random direction if available: skip n set bits and take the next one
+        int n = nextRandom(Integer.bitCount(exits));
+        for (int i = 0; i < n; i++) {
+            exits &= exits - 1;
         }
+        return Maze.DIRECTIONS[Integer.numberOfTrailingZeros(exits)];
+    }
 
-        return directions;
+    // random number from 0 to bound - 1
+    private int nextRandom(int bound) {
+        long z = RngService.mix64(randomState);
+        randomState += 0x9E3779B97F4A7C15L;
+        return (int) ((z >>> 33) % bound);
     }
 
 
@@ -295,12 +379,47 @@ public class Ghost {
 
     // respawn ghost if eaten
     public void respawn() {
-        position = startPosition.copy();
-        currentNode = targetNode; // reset node tracking
+        if (fixedPoint) {
+            fixedX = startNode.getFixedX();
+            fixedY = startNode.getFixedY();
+            syncPosition(true);
+        } else {
+            position = startPosition.copy();
+            previousPosition = position;
+        }
+        currentNode = startNode; // reset node tracking
+        targetNode = startNode;
         behavior = Constants.SCATTER;      // start in scatter mode again
         direction = Constants.STOP;
     }
 
+    // act on GhostAI's latest mode broadcast, unless this ghost already has
+    public void syncMode(int version, int command, int mode) {
+        if (version == modeVersion) {
+            return;
+        }
+        modeVersion = version;
+
+        switch (command) {
+            case GhostAI.SWITCH_MODE:
+                switchMode(mode);
+                break;
+            case GhostAI.FRIGHTEN:
+                frighten();
+                break;
+            case GhostAI.END_FRIGHTENED:
+                endFrightened(mode);
+                break;
+        }
+    }
+
+    // frightened mode is over, go back to chasing or scattering (no turning around this time)
+    public void endFrightened(int mode) {
+        if (behavior == Constants.FRIGHTENED) {
+            behavior = mode;
+        }
+    }
+
     // switch between scatter and chase mode depending on the situation
     public void switchMode(int mode) {
         if (behavior != Constants.FRIGHTENED && behavior != Constants.EATEN) {
@@ -317,9 +436,79 @@ public class Ghost {
 
     // check if this ghost is colliding with pacman, true if so, OW false
     public boolean isCollidingWith(Vector pacmanPos) {
-        double distanceSquared = position.subtract(pacmanPos).magnitudeSquared();
-        double collisionRadius = (radius + 10) * (radius + 10); // 10 is pacman's radius
-        return distanceSquared < collisionRadius;
+        double dx = position.getX() - pacmanPos.getX();
+        double dy = position.getY() - pacmanPos.getY();
+        double collisionRadius = getCollisionRadius();
+        return dx * dx + dy * dy < collisionRadius * collisionRadius;
+    }
+
+    // check if this ghost touched pacman at any moment of the last tick, pacman went from pacmanFrom to pacmanTo
+    // while the ghost went from its previous position to where it is now, both in straight lines at a steady speed,
+    // so this finds the closest the two got to each other and nothing slips through at big time steps
+    public boolean isSweptCollidingWith(Vector pacmanFrom, Vector pacmanTo) {
+        // pacman as seen from the ghost at the start of the tick, and how that changes over the tick
+        double startX = pacmanFrom.getX() - previousPosition.getX();
+        double startY = pacmanFrom.getY() - previousPosition.getY();
+        double moveX = (pacmanTo.getX() - pacmanFrom.getX()) - (position.getX() - previousPosition.getX());
+        double moveY = (pacmanTo.getY() - pacmanFrom.getY()) - (position.getY() - previousPosition.getY());
+
+        // fraction of the tick where they are closest, kept within the tick
+        double moveSquared = moveX * moveX + moveY * moveY;
+        double t = 1;
+        if (moveSquared > 0) {
+            t = Math.max(0, Math.min(1, -(startX * moveX + startY * moveY) / moveSquared));
+        }
+
+        double dx = startX + moveX * t;
+        double dy = startY + moveY * t;
+        double collisionRadius = getCollisionRadius();
+        return dx * dx + dy * dy < collisionRadius * collisionRadius;
+    }
+
+    // seconds of moving until this ghost reaches its target node and picks a new way to go,
+    // 0 if it is standing on a node, infinite if it has nowhere to go
+    public double timeToNextNode() {
+        if (targetNode == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (direction == Constants.STOP || targetNode == currentNode) {
+            return 0;
+        }
+        double remaining = Math.abs(targetNode.getPosition().getX() - position.getX())
+                + Math.abs(targetNode.getPosition().getY() - position.getY());
+        double currentSpeed = behavior == Constants.FRIGHTENED ? speed * 0.5 : speed;
+        return remaining / currentSpeed;
+    }
+
+    // switch fixed point positions on or off, switching on moves the ghost onto the nearest fixed point position
+    public void setFixedPoint(boolean fixedPoint) {
+        if (fixedPoint && !this.fixedPoint) {
+            fixedX = FixedPoint.fromDouble(position.getX());
+            fixedY = FixedPoint.fromDouble(position.getY());
+            position = new Vector();
+            previousPosition = new Vector();
+            syncPosition(true);
+        }
+        this.fixedPoint = fixedPoint;
+    }
+
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    // the last GhostAI mode broadcast this ghost acted on
+    public int getModeVersion() {
+        return modeVersion;
+    }
+
+    // where the ghost was before its last move
+    public Vector getPreviousPosition() {
+        return previousPosition;
+    }
+
+    // how close pacman's center has to get to this ghost's center to touch it
+    public double getCollisionRadius() {
+        return radius + 10; // 10 is pacman's radius
     }
 
     // render ghost on the screen
@@ -434,6 +623,100 @@ public class Ghost {
         return ghostType;
     }
 
+    // tile the ghost is on
+    public int getTileCol() {
+        return (int) (position.getX() / Constants.TILE_WIDTH);
+    }
+
+    public int getTileRow() {
+        return (int) (position.getY() / Constants.TILE_HEIGHT);
+    }
+
+    public Maze getScatterTarget() {
+        return scatterTarget;
+    }
+
+    // tile the ghost chased on its last update
+    public int getChaseTargetCol() {
+        return chaseTile[0];
+    }
+
+    public int getChaseTargetRow() {
+        return chaseTile[1];
+    }
+
+    public TargetingStrategy getTargeting() {
+        return targeting;
+    }
+
+    public void setTargeting(TargetingStrategy targeting) {
+        this.targeting = targeting;
+    }
+
+    public void setDistanceField(DistanceField distances) {
+        this.distances = distances;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    // let a player steer the ghost, where the held direction can't be taken the AI picks the way as usual
+    // frightened ghosts still wander at random and eaten ones go home on their own
+    public void setPlayerControlled(boolean playerControlled) {
+        this.playerControlled = playerControlled;
+    }
+
+    public boolean isPlayerControlled() {
+        return playerControlled;
+    }
+
+    // direction the player holds, looked at every time the ghost reaches a node
+    public void setInputDirection(int direction) {
+        this.inputDirection = direction;
+    }
+
+    // restart the random number generator, used when a game is replayed with the same seed
+    public void reseed(long seed) {
+        randomState = seed;
+    }
+
+    public long getRandomState() {
+        return randomState;
+    }
+
+    // write the ghost's moving parts into state starting at offset, returns the offset after them
+    public int saveState(double[] state, int offset) {
+        state[offset] = Maze.indexOf(currentNode);
+        state[offset + 1] = Maze.indexOf(targetNode);
+        state[offset + 2] = position.getX();
+        state[offset + 3] = position.getY();
+        state[offset + 4] = direction;
+        state[offset + 5] = behavior;
+        state[offset + 6] = modeVersion;
+        return offset + STATE_SIZE;
+    }
+
+    // read back what saveState wrote, nodes are looked up in the maze the ghost lives in
+    public int loadState(double[] state, int offset, MazeGroup nodes, long randomState) {
+        currentNode = nodes.getNode((int) state[offset]);
+        targetNode = nodes.getNode((int) state[offset + 1]);
+        if (fixedPoint) {
+            fixedX = FixedPoint.fromDouble(state[offset + 2]);
+            fixedY = FixedPoint.fromDouble(state[offset + 3]);
+            syncPosition(true);
+        } else {
+            position.setX(state[offset + 2]);
+            position.setY(state[offset + 3]);
+            previousPosition = position;
+        }
+        direction = (int) state[offset + 4];
+        behavior = (int) state[offset + 5];
+        modeVersion = (int) state[offset + 6];
+        this.randomState = randomState;
+        return offset + STATE_SIZE;
+    }
+
 
 
 }
\ No newline at end of file
@@ -1,17 +1,42 @@
 // this class manages multiple ghosts, their AI behavior modes, and timing for mode switches between chase and scatter
+// it works for any number of ghosts: past PARALLEL_THRESHOLD ghosts the updates are split across a fork-join pool
 
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class GhostAI {
+    // the classic four ghosts
+    public static final int DEFAULT_GHOST_COUNT = 4;
+
+    // from this many released ghosts on, updates run in parallel
+    public static final int PARALLEL_THRESHOLD = 64;
+    private static final int GHOSTS_PER_TASK = 32;
+
+    // mode broadcasts, every ghost acts on the latest one the next time it is updated
+    public static final int SWITCH_MODE = 0;
+    public static final int FRIGHTEN = 1;
+    public static final int END_FRIGHTENED = 2;
+
+    // ghosts leave the house in RELEASE_WAVES waves, RELEASE_INTERVAL seconds apart
+    private static final int RELEASE_WAVES = 4;
+    private static final double RELEASE_INTERVAL = 4.0;
+
     // list of all ghosts in the game
     private List<Ghost> ghosts;
 
+    // game time, the mode, frightened and release timers below all live on this wheel
+    private TimerWheel timers;
+    private boolean ownsTimers; // the wheel was made here, so update has to turn it
+
     // scatter/chase mode timing
-    private double modeTimer;
-    private double frightenedTimer;
+    private GameTimer modeTimer = new GameTimer(this::switchChaseScatterMode);
+    private GameTimer frightenedTimer = new GameTimer(this::restorePreviousMode);
+    private long pausedModeTicks; // what was left of the scatter/chase phase when frightened mode started
     private boolean isChaseMode;
 
     // duration of frightened mode in seconds
@@ -22,33 +47,82 @@ public class GhostAI {
     private final double[] scatterTimes = {7.0, 7.0, 5.0, 5.0};
     private final double[] chaseTimes = {20.0, 20.0, 20.0, 999.0}; // last one is "permanent"
     private int patternIndex;
-    private double [] releaseTimers = {0, 4, 8, 12}; // seconds delay per ghost
+
+    // wheel tick the ghosts were last sent home, and how many of them are out of the house
+    private GameTimer releaseTimer = new GameTimer(this::releaseGhosts);
+    private long releaseStart;
+    private int releasedCount;
+
+    // the latest mode broadcast
+    private int modeVersion;
+    private int modeCommand;
+
+    // pool for updating big swarms
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
 
     // debug flag
     private boolean debug = false;
 
+    // where the ghosts' random movement comes from, one stream per ghost
+    private RngService rng;
+
+    // shortest paths through the maze, shared by all ghosts
+    private DistanceField distanceField;
+
+    // ghosts by tile, so collision checks only look at the ghosts near pacman
+    // it is rebuilt the first time it is needed after the ghosts moved
+    private SpatialHash ghostGrid;
+    private boolean ghostGridStale = true;
+    private int[] nearbyGhosts;
+    private double collisionRadius;
+    private double maxGhostStep; // farthest any ghost moved in the last tick, found while rebuilding the grid
+
     // ghost manager (maze navigation)
     public GhostAI(MazeGroup nodes) {
+        this(nodes, System.nanoTime());
+    }
+
+    // same as above, but the ghosts' random movement is seeded so a game can be repeated
+    public GhostAI(MazeGroup nodes, long seed) {
+        this(nodes, seed, DEFAULT_GHOST_COUNT);
+    }
+
+    // any number of ghosts, they cycle through the four personalities and home corners
+    // the timers run on their own wheel, turned by update
+    public GhostAI(MazeGroup nodes, long seed, int ghostCount) {
+        this(nodes, new RngService(seed), ghostCount, new TimerWheel());
+        this.ownsTimers = true;
+    }
+
+    // same, with the random numbers and the timers of the game the ghosts are in
+    // (the timer wheel is turned by whoever owns it, the simulation's game clock)
+    public GhostAI(MazeGroup nodes, RngService rng, int ghostCount, TimerWheel timers) {
         this.ghosts = new ArrayList<>();
-        this.modeTimer = scatterTimes[0]; // Start with scatter mode
-        this.frightenedTimer = 0;
-        this.isChaseMode = false;
-        this.patternIndex = 0;
+        this.rng = rng;
+        this.timers = timers;
+        this.distanceField = nodes.getDistanceField();
+
+        initializeGhosts(nodes, ghostCount);
 
-        initializeGhosts(nodes);
+        // Start with scatter mode, and the first ghosts out of the house
+        // (the ghosts were just built on their start nodes, only the timers need setting)
+        resetModeTimers();
+        restartRelease();
+
+        char[][] maze = nodes.getMazeData();
+        this.ghostGrid = new SpatialHash(maze[0].length, maze.length, ghosts.size());
+        this.nearbyGhosts = new int[ghosts.size()];
+        for (Ghost ghost : ghosts) {
+            collisionRadius = Math.max(collisionRadius, ghost.getCollisionRadius());
+        }
 
-        // Debug output to check if ghosts were created
+        // a server builds a game per session, so only a problem is worth a line on the console
         if (ghosts.isEmpty()) {
             System.err.println("WARNING: No ghosts were initialized!");
-        } else {
-            System.out.println("Successfully initialized " + ghosts.size() + " ghosts");
-            for (Ghost ghost : ghosts) {
-                System.out.println("Ghost " + ghost.getGhostType() + " position: " + ghost.getPosition());
-            }
         }
     }
 
-    private void initializeGhosts(MazeGroup nodes) {
+    private void initializeGhosts(MazeGroup nodes, int ghostCount) {
         // Get ghost home positions
         Maze[] startNodes = nodes.getGhostStartNodes();
         Maze[] scatterNodes = nodes.getScatterNodes();
@@ -74,35 +148,25 @@ public class GhostAI {
             }
         }
 
-        // blinky (Red) - direct chaser
-        addGhost(0, startNodes[0], scatterNodes[0], Color.RED);
-
-        // pinky (Pink) - ambusher
-        if (startNodes.length > 1 && startNodes[1] != null) {
-            addGhost(1, startNodes[1], scatterNodes[1], Color.PINK);
-        } else if (startNodes[0] != null) {
-            // Fallback to using the same node with slight offset
-            addGhost(1, startNodes[0], scatterNodes[0], Color.PINK);
-        }
-
-        // inky (Cyan) - unpredictable
-        if (startNodes.length > 2 && startNodes[2] != null) {
-            addGhost(2, startNodes[2], scatterNodes[2], new Color(0, 255, 255));
-        } else if (startNodes[0] != null) {
-            addGhost(2, startNodes[0], scatterNodes[0], new Color(0, 255, 255));
-        }
-
-        // clyde (Orange) - random
-        if (startNodes.length > 3 && startNodes[3] != null) {
-            addGhost(3, startNodes[3], scatterNodes[3], Color.ORANGE);
-        } else if (startNodes[0] != null) {
-            addGhost(3, startNodes[0], scatterNodes[0], Color.ORANGE);
+        // blinky (Red) - direct chaser, pinky (Pink) - ambusher, inky (Cyan) - unpredictable, clyde (Orange) - random
+        // past four ghosts the personalities repeat
+        Color[] colors = {Color.RED, Color.PINK, new Color(0, 255, 255), Color.ORANGE};
+        for (int i = 0; i < ghostCount; i++) {
+            int type = i % 4;
+            if (startNodes.length > type && startNodes[type] != null) {
+                addGhost(type, startNodes[type], scatterNodes[type], colors[type]);
+            } else {
+                // Fallback to using the same node as blinky
+                addGhost(type, startNodes[0], scatterNodes[0], colors[type]);
+            }
         }
     }
 
     // add a new ghost to the manager with a specific type, start position, scatter node, and color
     private void addGhost(int type, Maze startNode, Maze scatterNode, Color color) {
-        Ghost ghost = new Ghost(type, startNode, scatterNode, color);
+        Ghost ghost = new Ghost(type, startNode, scatterNode, color, rng.seedFor(RngService.GHOSTS, ghosts.size()));
+        ghost.setTargeting(defaultTargeting(type));
+        ghost.setDistanceField(distanceField);
 
         // Add small offset to prevent ghosts from stacking if they share the same node
         Vector pos = ghost.getPosition();
@@ -113,24 +177,137 @@ public class GhostAI {
 
     // update all ghosts and manage mode timing
     public void update(double dt, Pacman pacman) {
-        // update mode timers
-        updateTimers(dt);
+        // mode switches and releases happen on the timer wheel
+        if (ownsTimers) {
+            timers.advance(dt);
+        }
 
-        // release ghosts one by one based on timers
-        for (int i = 0; i < ghosts.size(); i++) {
+        // every ghost picks its target before any of them moves, so the result is the same
+        // whether the ghosts are updated one after another or in parallel
+        if (releasedCount >= PARALLEL_THRESHOLD) {
+            pool.invoke(new UpdateTask(dt, pacman, 0, ghosts.size(), false));
+            pool.invoke(new UpdateTask(dt, pacman, 0, ghosts.size(), true));
+        } else {
+            updateRange(dt, pacman, 0, ghosts.size(), false);
+            updateRange(dt, pacman, 0, ghosts.size(), true);
+        }
+        ghostGridStale = true;
+    }
+
+    // first pass (move == false): catch up on the mode broadcast and pick targets, second pass: move
+    private void updateRange(double dt, Pacman pacman, int from, int to, boolean move) {
+        int mode = isChaseMode ? Constants.CHASE : Constants.SCATTER;
+        for (int i = from; i < to; i++) {
             Ghost ghost = ghosts.get(i);
+            if (!move) {
+                ghost.syncMode(modeVersion, modeCommand, mode);
+                if (i < releasedCount) {
+                    ghost.chooseTarget(pacman, ghosts);
+                }
+            } else if (i < releasedCount) {
+                ghost.move(dt);
+            }
+        }
+    }
 
-            // only update ghosts that have been released
-            if (releaseTimers[i] <= 0) {
-                ghost.update(dt, pacman);
-            } else {
-                releaseTimers[i] -= dt;
-                // keep ghost in home position until released
-                //ghost.stayInHome();
+    // one slice of the ghost list, split in half until it is small enough to do directly
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private double dt;
+        private transient Pacman pacman;
+        private int from;
+        private int to;
+        private boolean move;
+
+        UpdateTask(double dt, Pacman pacman, int from, int to, boolean move) {
+            this.dt = dt;
+            this.pacman = pacman;
+            this.from = from;
+            this.to = to;
+            this.move = move;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GHOSTS_PER_TASK) {
+                updateRange(dt, pacman, from, to, move);
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new UpdateTask(dt, pacman, from, mid, move), new UpdateTask(dt, pacman, mid, to, move));
         }
     }
 
+    // seconds after a reset that ghost i leaves the house, four ghosts leave at 0, 4, 8 and 12 seconds
+    private double releaseDelay(int i) {
+        return RELEASE_INTERVAL * ((long) i * RELEASE_WAVES / ghosts.size());
+    }
+
+    // let out every ghost whose time has come, then wait for the next one
+    private void releaseGhosts() {
+        long elapsed = timers.getTick() - releaseStart;
+        while (releasedCount < ghosts.size() && TimerWheel.ticks(releaseDelay(releasedCount)) <= elapsed) {
+            releasedCount++;
+        }
+        if (releasedCount < ghosts.size()) {
+            timers.schedule(releaseTimer, TimerWheel.ticks(releaseDelay(releasedCount)) - elapsed);
+        }
+    }
+
+    // seconds until the next mode switch, end of frightened mode or ghost release
+    public double timeToNextEvent() {
+        double next = Math.min(modeTimer.getSecondsLeft(), frightenedTimer.getSecondsLeft());
+        return Math.min(next, releaseTimer.getSecondsLeft());
+    }
+
+    // how many ghosts have left the house, ghosts are released in list order
+    public int getReleasedCount() {
+        return releasedCount;
+    }
+
+    // goes up every time a mode change is broadcast to the ghosts
+    public int getModeVersion() {
+        return modeVersion;
+    }
+
+    // move every ghost in fixed point (see FixedPoint) or double positions
+    public void setFixedPoint(boolean fixedPoint) {
+        for (Ghost ghost : ghosts) {
+            ghost.setFixedPoint(fixedPoint);
+        }
+    }
+
+    // pool used once there are more than PARALLEL_THRESHOLD ghosts
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // tell every ghost about a mode change, they pick it up on their next update
+    private void broadcast(int command) {
+        modeCommand = command;
+        modeVersion++;
+    }
+
+    // the classic personality for each ghost type
+    public static TargetingStrategy defaultTargeting(int type) {
+        switch (type) {
+            case 1:
+                return new PinkyTargeting();
+            case 2:
+                return new InkyTargeting();
+            case 3:
+                return new ClydeTargeting();
+            default:
+                return new BlinkyTargeting();
+        }
+    }
+
+    // swap in a different chase strategy for one ghost (index in getGhosts())
+    public void setTargetingStrategy(int ghostIndex, TargetingStrategy strategy) {
+        ghosts.get(ghostIndex).setTargeting(strategy);
+    }
+
     public void stayInHome() {
 
     }
@@ -140,69 +317,59 @@ public class GhostAI {
         this.debug = debug;
     }
 
-    // update the timers for mode switching and frightened mode
-    private void updateTimers(double dt) {
-        // update frightened timer if active
-        if (frightenedTimer > 0) {
-            frightenedTimer -= dt;
-            if (frightenedTimer <= 0) {
-                // end of frightened mode
-                restorePreviousMode();
-            }
-        } else {
-            // update chase/scatter mode timer
-            modeTimer -= dt;
-            if (modeTimer <= 0) {
-                // time to switch modes
-                switchChaseScatterMode();
-            }
-        }
-    }
-
     // switch between chase and scatter modes
     private void switchChaseScatterMode() {
         isChaseMode = !isChaseMode;
 
         // set timer based on current mode
         if (isChaseMode) {
-            modeTimer = chaseTimes[patternIndex];
+            timers.scheduleSeconds(modeTimer, chaseTimes[patternIndex]);
         } else {
-            modeTimer = scatterTimes[patternIndex];
+            timers.scheduleSeconds(modeTimer, scatterTimes[patternIndex]);
             // pattern index after completing a scatter phase
             patternIndex = Math.min(patternIndex + 1, scatterTimes.length - 1);
         }
 
         // update all ghosts with new mode
-        for (Ghost ghost : ghosts) {
-            ghost.switchMode(isChaseMode ? Constants.CHASE : Constants.SCATTER);
-        }
+        broadcast(SWITCH_MODE);
     }
 
     // activate frightened mode for all ghosts
     public void frightenGhosts() {
+        // the scatter/chase clock stops while the ghosts are frightened
+        if (!frightenedTimer.isActive()) {
+            pausedModeTicks = modeTimer.getTicksLeft();
+            modeTimer.cancel();
+        }
+
         // reset frightened timer
-        frightenedTimer = FRIGHTENED_DURATION;
+        timers.scheduleSeconds(frightenedTimer, FRIGHTENED_DURATION);
 
         // set all ghosts to frightened mode
-        for (Ghost ghost : ghosts) {
-            ghost.frighten();
-        }
+        broadcast(FRIGHTEN);
     }
 
     // restore previous chase/scatter mode after frightened ends
     private void restorePreviousMode() {
-        // update all ghosts with previous mode
-        for (Ghost ghost : ghosts) {
-            if (ghost.getBehavior() == Constants.FRIGHTENED) {
-                ghost.switchMode(isChaseMode ? Constants.CHASE : Constants.SCATTER);
-            }
-        }
+        // the scatter/chase clock picks up where it stopped
+        timers.schedule(modeTimer, pausedModeTicks);
+
+        // update all frightened ghosts with previous mode
+        broadcast(END_FRIGHTENED);
     }
 
     // check if any ghost caught pacman, true if caught, OW false
     public boolean checkPacmanCaught(Vector pacmanPos) {
-        for (Ghost ghost : ghosts) {
-            if (ghost.isCollidingWith(pacmanPos)) {
+        return checkPacmanCaught(pacmanPos, pacmanPos);
+    }
+
+    // same, but pacman went from pacmanFrom to pacmanTo in the last tick and a ghost counts as touching him
+    // if it did at any moment of that tick, not just at the end of it
+    public boolean checkPacmanCaught(Vector pacmanFrom, Vector pacmanTo) {
+        int count = ghostsTouched(pacmanFrom, pacmanTo);
+        for (int i = 0; i < count; i++) {
+            Ghost ghost = ghosts.get(nearbyGhosts[i]);
+            if (ghost.isSweptCollidingWith(pacmanFrom, pacmanTo)) {
                 if (ghost.getBehavior() != Constants.FRIGHTENED && ghost.getBehavior() != Constants.EATEN) {
                     return true;
             }
@@ -212,14 +379,21 @@ public class GhostAI {
         return false;
     }
 
-    // handle collision between pacman and a ghost
-    public boolean handleGhostCollision(Vector pacmanPos, GameState gameState) {
-        for (Ghost ghost : ghosts) {
-            if (ghost.isCollidingWith(pacmanPos)) {
+    // handle collision between pacman and a ghost, the score is handed out when the events are dispatched
+    public boolean handleGhostCollision(Vector pacmanPos, EventBus events) {
+        return handleGhostCollision(pacmanPos, pacmanPos, events);
+    }
+
+    // same, swept over the last tick like checkPacmanCaught(pacmanFrom, pacmanTo)
+    public boolean handleGhostCollision(Vector pacmanFrom, Vector pacmanTo, EventBus events) {
+        int count = ghostsTouched(pacmanFrom, pacmanTo);
+        for (int i = 0; i < count; i++) {
+            Ghost ghost = ghosts.get(nearbyGhosts[i]);
+            if (ghost.isSweptCollidingWith(pacmanFrom, pacmanTo)) {
                 if (ghost.getBehavior() == Constants.FRIGHTENED) {
                     // Ghost is eaten
                     ghost.collideWithPacman();
-                    gameState.addScore(Constants.GHOST_SCORE);
+                    events.publish(Constants.GHOST_EATEN, ghost.getGhostType());
                     return false;
                 } else if (ghost.getBehavior() != Constants.EATEN) {
                     // Pacman is caught
@@ -230,23 +404,79 @@ public class GhostAI {
         return false;
     }
 
+    // put the indices of the ghosts whose centers are within radius of x, y into result, lowest index first,
+    // and return how many there are, result has to be big enough for every ghost
+    public int ghostsNear(double x, double y, double radius, int[] result) {
+        indexGhosts();
+        int count = ghostGrid.query(x, y, radius, result);
+        // keep the order of the ghost list, the first ghost touched is the one that counts
+        Arrays.sort(result, 0, count);
+        return count;
+    }
+
+    // candidates for touching pacman during the last tick, into nearbyGhosts
+    // at any moment pacman was within half his path of its middle, and every ghost within maxGhostStep of where it is now
+    private int ghostsTouched(Vector pacmanFrom, Vector pacmanTo) {
+        double midX = (pacmanFrom.getX() + pacmanTo.getX()) / 2;
+        double midY = (pacmanFrom.getY() + pacmanTo.getY()) / 2;
+        double halfPath = (Math.abs(pacmanTo.getX() - pacmanFrom.getX()) + Math.abs(pacmanTo.getY() - pacmanFrom.getY())) / 2;
+        indexGhosts();
+        return ghostsNear(midX, midY, collisionRadius + halfPath + maxGhostStep, nearbyGhosts);
+    }
+
+    // put the ghosts in the grid again if they moved since the last time
+    private void indexGhosts() {
+        if (!ghostGridStale) {
+            return;
+        }
+        ghostGrid.clear();
+        maxGhostStep = 0;
+        for (Ghost ghost : ghosts) {
+            Vector position = ghost.getPosition();
+            ghostGrid.add(position.getX(), position.getY());
+            double stepX = position.getX() - ghost.getPreviousPosition().getX();
+            double stepY = position.getY() - ghost.getPreviousPosition().getY();
+            maxGhostStep = Math.max(maxGhostStep, Math.abs(stepX) + Math.abs(stepY));
+        }
+        ghostGridStale = false;
+    }
+
     // reset all ghosts to their starting positions
     public void resetGhosts() {
+        ghostGridStale = true;
         for (Ghost ghost : ghosts) {
             ghost.respawn();
         }
+        resetModeTimers();
+    }
 
-        // reset mode timers
-        modeTimer = scatterTimes[0];
-        frightenedTimer = 0;
+    public void resetAfterDeath() {
+        resetGhosts();
+        restartRelease();
+    }
+
+    // back to the first scatter phase, nobody frightened
+    private void resetModeTimers() {
+        timers.scheduleSeconds(modeTimer, scatterTimes[0]);
+        frightenedTimer.cancel();
         isChaseMode = false;
         patternIndex = 0;
     }
 
-    public void resetAfterDeath() {
-        resetGhosts();
+    // every ghost back in the house, let them out again from now on
+    private void restartRelease() {
+        releaseStart = timers.getTick();
+        releasedCount = 0;
+        releaseGhosts();
+    }
 
-        releaseTimers = new double[] {0, 4, 8, 12};
+    // reset everything for a new game with a new master seed, without rebuilding the ghosts
+    public void resetForNewGame(long seed) {
+        rng.setMasterSeed(seed);
+        resetAfterDeath();
+        for (int i = 0; i < ghosts.size(); i++) {
+            ghosts.get(i).reseed(rng.seedFor(RngService.GHOSTS, i));
+        }
     }
 
     // render all ghosts on the screen
@@ -267,6 +497,58 @@ public class GhostAI {
         }
     }
 
+    // how many numbers saveState/loadState use for the timers (the ghosts save themselves)
+    public int getStateSize() {
+        return 11;
+    }
+
+    // write the mode schedule and release timers into state starting at offset, returns the offset after them
+    // timers are saved as the ticks they have left (-1 if they aren't running), so they can go on any wheel
+    public int saveState(double[] state, int offset) {
+        state[offset] = ticksLeft(modeTimer);
+        state[offset + 1] = pausedModeTicks;
+        state[offset + 2] = ticksLeft(frightenedTimer);
+        state[offset + 3] = isChaseMode ? 1 : 0;
+        state[offset + 4] = patternIndex;
+        state[offset + 5] = timers.getTick() - releaseStart;
+        state[offset + 6] = releasedCount;
+        state[offset + 7] = ticksLeft(releaseTimer);
+        state[offset + 8] = modeVersion;
+        state[offset + 9] = modeCommand;
+        state[offset + 10] = timers.getPendingTime();
+        return offset + getStateSize();
+    }
+
+    private static long ticksLeft(GameTimer timer) {
+        return timer.isActive() ? timer.getTicksLeft() : -1;
+    }
+
+    private void restoreTimer(GameTimer timer, double ticksLeft) {
+        if (ticksLeft < 0) {
+            timer.cancel();
+        } else {
+            timers.schedule(timer, (long) ticksLeft);
+        }
+    }
+
+    // read back what saveState wrote
+    public int loadState(double[] state, int offset) {
+        // the ghosts load their positions after this
+        ghostGridStale = true;
+        restoreTimer(modeTimer, state[offset]);
+        pausedModeTicks = (long) state[offset + 1];
+        restoreTimer(frightenedTimer, state[offset + 2]);
+        isChaseMode = state[offset + 3] != 0;
+        patternIndex = (int) state[offset + 4];
+        releaseStart = timers.getTick() - (long) state[offset + 5];
+        releasedCount = (int) state[offset + 6];
+        restoreTimer(releaseTimer, state[offset + 7]);
+        modeVersion = (int) state[offset + 8];
+        modeCommand = (int) state[offset + 9];
+        timers.setPendingTime(state[offset + 10]);
+        return offset + getStateSize();
+    }
+
     // get the list of ghosts
     public List<Ghost> getGhosts() {
         return ghosts;
@@ -0,0 +1,45 @@
+// this class is one finished game for the high score table: the score, the level it ended on, when it ended and
+// which maze it was played on (MazeGroup.getMazeHash), it never changes once made
+
+public class HighScore {
+    private long time;
+    private int score;
+    private int level;
+    private long mazeHash;
+
+    public HighScore(long time, int score, int level, long mazeHash) {
+        this.time = time;
+        this.score = score;
+        this.level = level;
+        this.mazeHash = mazeHash;
+    }
+
+    // true if this game goes above the other one in the table: a higher score, or the same score earlier
+    public boolean beats(HighScore other) {
+        return score != other.score ? score > other.score : time < other.time;
+    }
+
+    // getters
+
+    // when the game ended, in milliseconds since 1970
+    public long getTime() {
+        return time;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getMazeHash() {
+        return mazeHash;
+    }
+
+    @Override
+    public String toString() {
+        return score + " (level " + level + ")";
+    }
+}
@@ -0,0 +1,286 @@
+// this class keeps every finished game in an append-only log file, so the high score table survives a restart
+// the file is memory mapped, a game is added by writing its record into the mapping and forcing just those bytes
+// out to disk. On startup the log is read once from start to end to build the table of the TOP_SIZE best games
+//
+// the game thread only ever calls submit(), which puts the game in a lock-free queue, wakes the writer thread and
+// returns. The writer thread does the file work, nothing on the game thread waits for the disk or for a lock
+//
+// file layout, all numbers big-endian:
+//   header (32 bytes): magic, version, then zeros
+//   records (32 bytes each, so a record never straddles a page):
+//     int CRC32C of the other 28 bytes, long time, long maze hash, int score, int level, then zeros
+//   the rest of the file is zeros, the first all-zero record is the end of the log
+//
+// after a power loss the last record can be half written, its checksum doesn't match: the scan stops there,
+// zeros it and the next game is written in its place. The log is compacted down to the table (a new file,
+// renamed over the old one) once it holds COMPACT_RECORDS games, and on startup if it already does
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+public class HighScoreLog {
+    public static final Path DEFAULT_FILE = Paths.get("highscores.log");
+
+    private static final int MAGIC = 0x504D4853; // "PMHS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int GROW_BYTES = 1 << 20;    // the mapping grows 1 MB at a time
+
+    // games in the table
+    public static final int TOP_SIZE = 100;
+    // games in the log before it is compacted
+    public static final int COMPACT_RECORDS = 10_000;
+
+    // marks the end of the queue for the writer thread
+    private static final HighScore STOP = new HighScore(0, 0, 0, 0);
+
+    private Path file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int end;         // where the next record goes
+    private int records;
+    private int tornRecords; // half written records found at startup
+    private CRC32C crc = new CRC32C();
+
+    // the table, best first, only changed by the writer thread (and the constructor before it starts)
+    private List<HighScore> top = new ArrayList<>();
+    private volatile List<HighScore> published = Collections.emptyList();
+
+    private ConcurrentLinkedQueue<HighScore> queue = new ConcurrentLinkedQueue<>();
+    private volatile Thread writer;
+
+    // open the log (made if it isn't there) and read it, games are written once start() is called
+    public HighScoreLog(Path file) throws IOException {
+        this.file = file;
+        openFile();
+        scan();
+        if (records >= COMPACT_RECORDS) {
+            compact();
+        }
+        publish();
+    }
+
+    // write submitted games on a thread of their own
+    public void start() {
+        writer = new Thread(this::writeLoop, "highscores");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // add a finished game, never waits, the table has it as soon as the writer thread wrote it
+    public void submit(int score, int level, long mazeHash) {
+        queue.add(new HighScore(System.currentTimeMillis(), score, level, mazeHash));
+        LockSupport.unpark(writer);
+    }
+
+    // write out what is queued and stop the writer thread
+    public void close() throws InterruptedException, IOException {
+        if (writer != null) {
+            queue.add(STOP);
+            LockSupport.unpark(writer);
+            writer.join();
+        }
+        channel.close();
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE - GROW_BYTES) {
+            throw new IOException("High score log is too big: " + size + " bytes");
+        }
+        // the mapping covers the whole file and some room after it, mapping past the end makes the file longer
+        int capacity = (int) Math.max(GROW_BYTES, (size + GROW_BYTES - 1) / GROW_BYTES * GROW_BYTES);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (size == 0 || map.getInt(0) == 0) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.force(0, HEADER_SIZE);
+        } else if (map.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a high score log");
+        } else if (map.getInt(4) != VERSION) {
+            throw new IOException("Unknown high score log version " + map.getInt(4));
+        }
+    }
+
+    // read every record from the start, stop at the end of the log or at a half written record
+    private void scan() {
+        records = 0;
+        top.clear();
+        int position = HEADER_SIZE;
+        while (position + RECORD_SIZE <= map.capacity()) {
+            if (isZero(position)) {
+                break;
+            }
+            if (checksum(position) != map.getInt(position)) {
+                // torn by a power loss, the next game overwrites it
+                tornRecords++;
+                for (int i = 0; i < RECORD_SIZE; i += 8) {
+                    map.putLong(position + i, 0);
+                }
+                map.force(position, RECORD_SIZE);
+                break;
+            }
+            addToTop(read(position));
+            records++;
+            position += RECORD_SIZE;
+        }
+        end = position;
+    }
+
+    private boolean isZero(int position) {
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            if (map.getLong(position + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int checksum(int position) {
+        crc.reset();
+        map.limit(position + RECORD_SIZE).position(position + 4);
+        crc.update(map);
+        map.clear();
+        return (int) crc.getValue();
+    }
+
+    private HighScore read(int position) {
+        return new HighScore(map.getLong(position + 4), map.getInt(position + 20), map.getInt(position + 24),
+                map.getLong(position + 12));
+    }
+
+    // write a record at the end of the log, the checksum last so a record cut short never looks whole
+    private void append(HighScore game) throws IOException {
+        if (end + RECORD_SIZE > map.capacity()) {
+            map.force();
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, map.capacity() + GROW_BYTES);
+        }
+        map.putLong(end + 4, game.getTime());
+        map.putLong(end + 12, game.getMazeHash());
+        map.putInt(end + 20, game.getScore());
+        map.putInt(end + 24, game.getLevel());
+        map.putInt(end, checksum(end));
+        end += RECORD_SIZE;
+        records++;
+    }
+
+    // the writer thread: write what comes in, force it to disk a batch at a time, then show it in the table
+    private void writeLoop() {
+        List<HighScore> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            HighScore game;
+            while ((game = queue.poll()) != null) {
+                batch.add(game);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.park(this); // submit() wakes us, a spurious wake up just goes round again
+                continue;
+            }
+
+            try {
+                int start = end;
+                for (HighScore next : batch) {
+                    if (next == STOP) {
+                        stopping = true;
+                        continue;
+                    }
+                    append(next);
+                    addToTop(next);
+                }
+                if (end > start) {
+                    map.force(start, end - start);
+                    publish();
+                }
+                if (records >= COMPACT_RECORDS) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing high scores: " + e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    // write the table to a new log and put it in place of the old one
+    private void compact() throws IOException {
+        List<HighScore> keep = new ArrayList<>(top);
+        keep.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(temp);
+        HighScoreLog compacted = new HighScoreLog(temp, keep);
+        compacted.channel.close();
+
+        map.force();
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openFile();
+        scan();
+    }
+
+    // a log with just these games in it, for compact()
+    private HighScoreLog(Path file, List<HighScore> games) throws IOException {
+        this.file = file;
+        openFile();
+        end = HEADER_SIZE;
+        for (HighScore game : games) {
+            append(game);
+        }
+        map.force();
+    }
+
+    private void addToTop(HighScore game) {
+        int index = top.size();
+        while (index > 0 && game.beats(top.get(index - 1))) {
+            index--;
+        }
+        if (index < TOP_SIZE) {
+            top.add(index, game);
+            if (top.size() > TOP_SIZE) {
+                top.remove(TOP_SIZE);
+            }
+        }
+    }
+
+    private void publish() {
+        published = List.copyOf(top);
+    }
+
+    // getters
+
+    // the best games, best first, any thread
+    public List<HighScore> getTop() {
+        return published;
+    }
+
+    // the best score so far, 0 if there are no games yet
+    public int getBest() {
+        List<HighScore> table = published;
+        return table.isEmpty() ? 0 : table.get(0).getScore();
+    }
+
+    // games in the log (until the writer thread changes it)
+    public int getRecords() {
+        return records;
+    }
+
+    public int getTornRecords() {
+        return tornRecords;
+    }
+}
@@ -0,0 +1,36 @@
+// inky (cyan) works with blinky: take the tile 2 tiles in front of pacman,
+// then double the line from blinky to that tile, inky heads for the end of it
+
+import java.util.List;
+
+public class InkyTargeting implements TargetingStrategy {
+    private static final int TILES_AHEAD = 2;
+
+    @Override
+    public void chooseTarget(Ghost ghost, Pacman pacman, List<Ghost> ghosts, int[] target) {
+        int dir = pacman.getCurrentDirection() + 2;
+        int aheadCol = pacman.getTileCol() + DIRECTION_COL[dir] * TILES_AHEAD;
+        int aheadRow = pacman.getTileRow() + DIRECTION_ROW[dir] * TILES_AHEAD;
+
+        Ghost blinky = findBlinky(ghosts);
+        if (blinky == null) {
+            // no blinky around, just go for the tile in front of pacman
+            target[0] = aheadCol;
+            target[1] = aheadRow;
+            return;
+        }
+
+        target[0] = 2 * aheadCol - blinky.getTileCol();
+        target[1] = 2 * aheadRow - blinky.getTileRow();
+    }
+
+    // blinky is normally the first ghost, so this almost never has to look far
+    private Ghost findBlinky(List<Ghost> ghosts) {
+        for (int i = 0; i < ghosts.size(); i++) {
+            if (ghosts.get(i).getGhostType() == 0) {
+                return ghosts.get(i);
+            }
+        }
+        return null;
+    }
+}
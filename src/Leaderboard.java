@@ -0,0 +1,332 @@
+// this class is the leaderboard of a game server: every session submits its finished games, from its own thread,
+// and anyone can ask for the best games or the rank of a score, for today, this week or all time
+// nothing takes a lock that covers the whole board, submissions and queries only meet in concurrent maps and atomics
+//
+// the windows are rolling and go by the hour: DAILY is the current hour and the 23 before it, WEEKLY the current
+// hour and the 167 before it. Games go into a slice per hour, evictExpired() (every minute on its own thread once
+// start() is called) takes the slices that left a window out of it, and drops them once they left the week
+//
+// what is kept:
+//   top games: ALL_TIME keeps its KEEP best, every hour slice keeps its KEEP best, the daily and weekly top is
+//              merged from the slices when asked (so getTop can give at most KEEP games)
+//   counts:    how many games had each score, per window, so a rank is a count of the games with a higher score.
+//              Scores are counted per block of points too, and per SUPER_BLOCK blocks, so counting the games above
+//              a score only looks at a few hundred numbers, however many games there were
+//
+// games are submitted as they end, so an hour is long over by the time its slice leaves a window
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+public class Leaderboard {
+    // windows
+    public static final int DAILY = 0;
+    public static final int WEEKLY = 1;
+    public static final int ALL_TIME = 2;
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final int DAILY_HOURS = 24;
+    private static final int WEEKLY_HOURS = 7 * 24;
+
+    // best games kept per window and per slice
+    public static final int KEEP = 1000;
+
+    // score counting: blocks of 1024 points, 64 blocks to a super block, scores past the last block go in it
+    private static final int BLOCK_BITS = 10;
+    private static final int BLOCKS = 4096;
+    private static final int SUPER_BLOCK = 64;
+
+    // best first: higher score, then earlier, then the one submitted first
+    private static final Comparator<Entry> BEST_FIRST = (a, b) -> {
+        if (a.score != b.score) {
+            return Integer.compare(b.score, a.score);
+        }
+        if (a.time != b.time) {
+            return Long.compare(a.time, b.time);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    // one game on the board
+    public static class Entry {
+        private String player;
+        private int score;
+        private int level;
+        private long time;
+        private long sequence;
+
+        Entry(String player, int score, int level, long time, long sequence) {
+            this.player = player;
+            this.score = score;
+            this.level = level;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return player + " " + score;
+        }
+    }
+
+    // how many games had each score
+    private static class ScoreCounts {
+        ConcurrentSkipListMap<Integer, LongAdder> perScore = new ConcurrentSkipListMap<>();
+        AtomicLongArray blocks = new AtomicLongArray(BLOCKS);
+        AtomicLongArray superBlocks = new AtomicLongArray(BLOCKS / SUPER_BLOCK);
+        LongAdder total = new LongAdder();
+
+        void add(int score, long count) {
+            LongAdder adder = perScore.get(score);
+            if (adder == null) {
+                adder = perScore.computeIfAbsent(score, s -> new LongAdder());
+            }
+            adder.add(count);
+            int block = block(score);
+            blocks.addAndGet(block, count);
+            superBlocks.addAndGet(block / SUPER_BLOCK, count);
+            total.add(count);
+        }
+
+        // games with a higher score
+        long countAbove(int score) {
+            int block = block(score);
+            int superBlock = block / SUPER_BLOCK;
+            long count = 0;
+            for (int i = superBlock + 1; i < superBlocks.length(); i++) {
+                count += superBlocks.get(i);
+            }
+            for (int i = block + 1; i < (superBlock + 1) * SUPER_BLOCK; i++) {
+                count += blocks.get(i);
+            }
+            // the scores above it in its own block (past the last block there is no end)
+            Map<Integer, LongAdder> sameBlock = block == BLOCKS - 1
+                    ? perScore.tailMap(score, false)
+                    : perScore.subMap(score, false, (block + 1) << BLOCK_BITS, false);
+            for (LongAdder adder : sameBlock.values()) {
+                count += adder.sum();
+            }
+            return count;
+        }
+
+        // take away every count of another ScoreCounts (a slice leaving a window)
+        void subtract(ScoreCounts other) {
+            for (Map.Entry<Integer, LongAdder> entry : other.perScore.entrySet()) {
+                long count = entry.getValue().sum();
+                if (count != 0) {
+                    add(entry.getKey(), -count);
+                }
+            }
+        }
+
+        private static int block(int score) {
+            return Math.min(BLOCKS - 1, Math.max(0, score) >> BLOCK_BITS);
+        }
+    }
+
+    // the KEEP best of a stream of games, added to from any thread
+    private static class TopGames {
+        ConcurrentSkipListMap<Entry, Entry> best = new ConcurrentSkipListMap<>(BEST_FIRST);
+        AtomicInteger size = new AtomicInteger(); // the map's size() walks the whole map
+
+        void add(Entry entry) {
+            // most games don't make it, they only cost a look at the last one
+            if (size.get() >= KEEP) {
+                Map.Entry<Entry, Entry> last = best.lastEntry();
+                if (last != null && BEST_FIRST.compare(entry, last.getKey()) > 0) {
+                    return;
+                }
+            }
+            best.put(entry, entry);
+            if (size.incrementAndGet() > KEEP && best.pollLastEntry() != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    // the games of one hour
+    private static class Slice {
+        long hour;
+        ScoreCounts counts = new ScoreCounts();
+        TopGames top = new TopGames();
+        volatile boolean leftDaily;
+
+        Slice(long hour) {
+            this.hour = hour;
+        }
+    }
+
+    private ConcurrentHashMap<Long, Slice> slices = new ConcurrentHashMap<>();
+    private volatile Slice currentSlice = new Slice(-1);
+    private ScoreCounts[] counts = {new ScoreCounts(), new ScoreCounts(), new ScoreCounts()};
+    private TopGames allTimeTop = new TopGames();
+    private AtomicLong nextSequence = new AtomicLong();
+    private ScheduledExecutorService evictor;
+    private LongSupplier clock;
+
+    public Leaderboard() {
+        this(System::currentTimeMillis);
+    }
+
+    // a leaderboard on another clock (milliseconds), to try the windows out without waiting days
+    public Leaderboard(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    // add a finished game that ended now
+    public void submit(String player, int score, int level) {
+        submit(player, score, level, clock.getAsLong());
+    }
+
+    // add a finished game that ended at the given time, games older than a window only go in the windows they fit
+    public void submit(String player, int score, int level, long time) {
+        Entry entry = new Entry(player, score, level, time, nextSequence.getAndIncrement());
+        counts[ALL_TIME].add(score, 1);
+        allTimeTop.add(entry);
+
+        long hour = time / HOUR_MS;
+        Slice slice = currentSlice;
+        if (slice.hour != hour) {
+            if (hour <= currentHour() - WEEKLY_HOURS) {
+                return; // too old for a slice
+            }
+            slice = slices.computeIfAbsent(hour, Slice::new);
+            if (hour >= currentSlice.hour) {
+                currentSlice = slice;
+            }
+        }
+        slice.counts.add(score, 1);
+        slice.top.add(entry);
+        counts[WEEKLY].add(score, 1);
+        if (!slice.leftDaily) {
+            counts[DAILY].add(score, 1);
+        }
+    }
+
+    // the best k games of a window (at most KEEP), best first
+    public List<Entry> getTop(int window, int k) {
+        k = Math.min(k, KEEP);
+        List<Entry> result = new ArrayList<>(k);
+        if (window == ALL_TIME) {
+            for (Entry entry : allTimeTop.best.keySet()) {
+                if (result.size() == k) {
+                    break;
+                }
+                result.add(entry);
+            }
+            return result;
+        }
+
+        // merge the slices in the window, one iterator per slice, best head first
+        long firstHour = currentHour() - (window == DAILY ? DAILY_HOURS : WEEKLY_HOURS) + 1;
+        PriorityQueue<Head> heads = new PriorityQueue<>();
+        for (Slice slice : slices.values()) {
+            if (slice.hour >= firstHour) {
+                Iterator<Entry> iterator = slice.top.best.keySet().iterator();
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+        while (result.size() < k && !heads.isEmpty()) {
+            Head head = heads.poll();
+            result.add(head.entry);
+            if (head.rest.hasNext()) {
+                head.entry = head.rest.next();
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    // the best game not taken yet from one slice, for the merge in getTop
+    private static class Head implements Comparable<Head> {
+        Entry entry;
+        Iterator<Entry> rest;
+
+        Head(Entry entry, Iterator<Entry> rest) {
+            this.entry = entry;
+            this.rest = rest;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return BEST_FIRST.compare(entry, other.entry);
+        }
+    }
+
+    // where a score would place in a window: 1 + the games with a higher score
+    public long getRank(int window, int score) {
+        return 1 + counts[window].countAbove(score);
+    }
+
+    // games in a window
+    public long getCount(int window) {
+        return counts[window].total.sum();
+    }
+
+    // take the slices that left the daily window out of it, and drop the ones that left the week
+    public void evictExpired(long now) {
+        long hour = now / HOUR_MS;
+        for (Slice slice : slices.values()) {
+            if (slice.hour <= hour - DAILY_HOURS && !slice.leftDaily) {
+                slice.leftDaily = true;
+                counts[DAILY].subtract(slice.counts);
+            }
+            if (slice.hour <= hour - WEEKLY_HOURS) {
+                slices.remove(slice.hour);
+                counts[WEEKLY].subtract(slice.counts);
+            }
+        }
+    }
+
+    // evict every minute on a thread of its own
+    public void start() {
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleAtFixedRate(() -> evictExpired(clock.getAsLong()), 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        if (evictor != null) {
+            evictor.shutdown();
+        }
+    }
+
+    private long currentHour() {
+        return clock.getAsLong() / HOUR_MS;
+    }
+}
@@ -0,0 +1,173 @@
+// this class checks Leaderboard against a brute force count of the same games, on a clock it moves by hand
+// it plays a number of days an hour at a time. In every hour writer threads submit games, a few of them hours
+// late, while reader threads query the board, and the clock thread moves the time on 10 minutes at a time and
+// evicts. Readers can only check what holds at any moment (a top list is best first, a better score never ranks
+// lower). After every hour, with the threads stopped, the top games, ranks and counts of every window are
+// compared with a list of every game submitted
+// run it after any change to the leaderboard
+//
+// usage: java LeaderboardCheck [seed] [days] [writer threads]
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LeaderboardCheck {
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final int GAMES_PER_HOUR = 200; // per writer
+    private static final int READERS = 2;
+    private static final int TOP = 100;
+    private static final int RANK_QUERIES = 50;
+
+    // a submitted game, as the brute force sees it
+    private static class Game {
+        int score;
+        long time;
+
+        Game(int score, long time) {
+            this.score = score;
+            this.time = time;
+        }
+    }
+
+    private static final Comparator<Game> BEST_FIRST = (a, b) -> a.score != b.score
+            ? Integer.compare(b.score, a.score) : Long.compare(a.time, b.time);
+
+    // a score like a real game: most low, a few very high (past the last counting block too)
+    private static int randomScore(SplittableRandom random) {
+        if (random.nextInt(1000) == 0) {
+            return 5_000_000 + random.nextInt(100_000);
+        }
+        return (int) (Math.abs(random.nextGaussian()) * 30_000) / 10 * 10;
+    }
+
+    // compare every window with the games submitted, returns how many answers were wrong
+    private static int compare(Leaderboard board, List<Game> games, long now, SplittableRandom random) {
+        int wrong = 0;
+        long hour = now / HOUR_MS;
+        for (int window = Leaderboard.DAILY; window <= Leaderboard.ALL_TIME; window++) {
+            long firstHour = window == Leaderboard.DAILY ? hour - 23
+                    : window == Leaderboard.WEEKLY ? hour - 167 : Long.MIN_VALUE;
+            List<Game> inWindow = new ArrayList<>();
+            for (Game game : games) {
+                if (game.time / HOUR_MS >= firstHour) {
+                    inWindow.add(game);
+                }
+            }
+            inWindow.sort(BEST_FIRST);
+
+            if (board.getCount(window) != inWindow.size()) {
+                wrong++;
+            }
+            List<Leaderboard.Entry> top = board.getTop(window, TOP);
+            if (top.size() != Math.min(TOP, inWindow.size())) {
+                wrong++;
+            }
+            for (int i = 0; i < top.size() && i < inWindow.size(); i++) {
+                if (top.get(i).getScore() != inWindow.get(i).score || top.get(i).getTime() != inWindow.get(i).time) {
+                    wrong++;
+                    break;
+                }
+            }
+            for (int i = 0; i < RANK_QUERIES; i++) {
+                int score = i == 0 ? 5_050_000 : random.nextInt(120_000);
+                long above = 0;
+                for (Game game : inWindow) {
+                    if (game.score > score) {
+                        above++;
+                    }
+                }
+                if (board.getRank(window, score) != above + 1) {
+                    wrong++;
+                }
+            }
+        }
+        return wrong;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        Leaderboard board = new Leaderboard(clock::get);
+        List<Game> games = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        AtomicInteger readerErrors = new AtomicInteger();
+        int wrong = 0;
+
+        for (int hour = 0; hour < days * 24; hour++) {
+            List<List<Game>> submitted = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                List<Game> mine = new ArrayList<>();
+                submitted.add(mine);
+                SplittableRandom writerRandom = random.split();
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < GAMES_PER_HOUR; i++) {
+                        // one game in 20 is handed in up to 3 hours late
+                        long time = clock.get();
+                        if (writerRandom.nextInt(20) == 0) {
+                            time -= writerRandom.nextLong(3 * HOUR_MS);
+                        }
+                        int score = randomScore(writerRandom);
+                        board.submit("p" + i, score, 1, time);
+                        mine.add(new Game(score, time));
+                    }
+                }));
+            }
+            Thread clockThread = new Thread(() -> {
+                for (int i = 0; i < 6; i++) {
+                    Thread.yield();
+                    board.evictExpired(clock.addAndGet(HOUR_MS / 6));
+                }
+            });
+            threads.add(clockThread);
+            for (int r = 0; r < READERS; r++) {
+                SplittableRandom readerRandom = random.split();
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        int window = readerRandom.nextInt(3);
+                        List<Leaderboard.Entry> top = board.getTop(window, 20);
+                        for (int j = 1; j < top.size(); j++) {
+                            if (top.get(j).getScore() > top.get(j - 1).getScore()) {
+                                readerErrors.incrementAndGet();
+                            }
+                        }
+                        // games submitted between the two queries can push the better score down, no more
+                        int score = readerRandom.nextInt(100_000);
+                        long rank = board.getRank(window, score);
+                        if (board.getRank(window, score + 10_000) > rank + (long) writers * GAMES_PER_HOUR) {
+                            readerErrors.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (List<Game> mine : submitted) {
+                games.addAll(mine);
+            }
+            // evict once more with every thread stopped, so the board is settled for the count
+            long now = clock.get();
+            board.evictExpired(now);
+            wrong += compare(board, games, now, random);
+        }
+
+        System.out.printf("%d days, %d games: %d wrong answers, %d wrong while writing; daily %d, weekly %d, all time %d%n",
+                days, games.size(), wrong, readerErrors.get(), board.getCount(Leaderboard.DAILY),
+                board.getCount(Leaderboard.WEEKLY), board.getCount(Leaderboard.ALL_TIME));
+        if (wrong > 0 || readerErrors.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+// this class puts load on a GameServer: it opens many client connections from one thread (one Selector), starts
+// a game on each, presses random keys, and reads every state the server sends
+// every second it prints how many states and bytes came in, and how evenly they came: the time between two states
+// of the same game should stay close to one tick (16.7 ms), the p99 and worst gaps show how steady the server is
+// with "delta" the clients ask for delta messages, decode them and acknowledge every tick, compare the KB/s
+// with "spectate" the clients all watch one game (started by someone else) and decode what they are sent
+//
+// usage: java LoadClient [clients] [seconds] [host] [port] [full|delta|spectate] [game id to spectate]
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+public class LoadClient {
+    // gaps are counted in 0.1 ms buckets up to 500 ms, longer ones go in the last bucket
+    private static final int GAP_BUCKETS = 5000;
+
+    private int[] gapCounts = new int[GAP_BUCKETS];
+    private long gapTotal;
+    private long states;
+    private long bytes;
+    private int connected;
+    private SplittableRandom random = new SplittableRandom(7);
+    private boolean deltas;
+    private int spectateGame = -1; // -1 to play
+    private long undecodable;
+
+    // one client connection and the game it plays
+    private class Client {
+        SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer out = ByteBuffer.allocate(64);
+        long lastState;
+        int statesUntilKey = 1;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        DeltaDecoder decoder;
+
+        void sendJoin(long seed) throws IOException {
+            out.clear();
+            out.putShort((short) (deltas ? 10 : 9)).put(GameServer.JOIN).putLong(seed);
+            if (deltas) {
+                out.put((byte) 1);
+            }
+            write();
+        }
+
+        void sendSpectate(int game) throws IOException {
+            out.clear();
+            out.putShort((short) 5).put(GameServer.SPECTATE).putInt(game);
+            write();
+        }
+
+        void sendInput(int direction) throws IOException {
+            out.clear();
+            out.putShort((short) 2).put(GameServer.INPUT).put((byte) direction);
+            write();
+        }
+
+        void sendAck(int tick) throws IOException {
+            out.clear();
+            out.putShort((short) 5).put(GameServer.ACK).putInt(tick);
+            write();
+        }
+
+        private void write() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+
+        void read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            bytes += read;
+
+            in.flip();
+            while (in.remaining() >= 2) {
+                int length = in.getShort(in.position()) & 0xFFFF;
+                if (in.remaining() < 2 + length) {
+                    break;
+                }
+                in.getShort();
+                int end = in.position() + length;
+                if (length > 0) {
+                    byte type = in.get();
+                    if (type == GameServer.WELCOME) {
+                        in.getInt();
+                        in.getLong();
+                        int ghosts = in.get();
+                        decoder = new DeltaDecoder(in.getShort(), ghosts + 1);
+                    } else if (type == GameServer.DELTA) {
+                        int tick = decoder.decode(in);
+                        if (tick < 0) {
+                            undecodable++;
+                        } else if (spectateGame < 0) {
+                            sendAck(tick);
+                        }
+                        state();
+                    } else {
+                        state();
+                    }
+                }
+                in.position(end);
+            }
+            in.compact();
+        }
+
+        // a state arrived: note the gap since the last one and now and then press another key
+        private void state() throws IOException {
+            long now = System.nanoTime();
+            if (lastState != 0) {
+                int bucket = (int) Math.min(GAP_BUCKETS - 1, (now - lastState) / 100_000);
+                gapCounts[bucket]++;
+                gapTotal++;
+            }
+            lastState = now;
+            states++;
+
+            if (spectateGame < 0 && --statesUntilKey <= 0) {
+                sendInput(PacmanEnv.ACTIONS[random.nextInt(PacmanEnv.ACTIONS.length)]);
+                statesUntilKey = random.nextInt(10, 90);
+            }
+        }
+    }
+
+    public LoadClient(boolean deltas) {
+        this.deltas = deltas;
+    }
+
+    // all clients watch this game instead of playing
+    public void setSpectateGame(int game) {
+        this.spectateGame = game;
+    }
+
+    public void run(int clients, int seconds, String host, int port) throws IOException {
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            Client client = new Client(channel);
+            if (spectateGame >= 0) {
+                client.sendSpectate(spectateGame);
+            } else {
+                client.sendJoin(i);
+            }
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            connected++;
+        }
+        System.out.println(connected + " clients connected");
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long nextReport = System.nanoTime() + 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    client.read();
+                } catch (IOException e) {
+                    key.cancel();
+                    client.channel.close();
+                    connected--;
+                }
+            }
+
+            if (System.nanoTime() >= nextReport) {
+                report();
+                nextReport += 1_000_000_000L;
+            }
+        }
+        selector.close();
+    }
+
+    // print the last second and start counting again
+    private void report() {
+        System.out.printf("%d clients: %d states/s, %.1f KB/s (%.1f bytes per state), gap p50 %.1f ms, p99 %.1f ms, "
+                        + "max %.1f ms%s%n", connected, states, bytes / 1024.0, states == 0 ? 0 : bytes / (double) states,
+                gapPercentile(0.5), gapPercentile(0.99), gapPercentile(1.0),
+                undecodable > 0 ? ", " + undecodable + " deltas without a baseline" : "");
+        states = 0;
+        bytes = 0;
+        gapTotal = 0;
+        Arrays.fill(gapCounts, 0);
+    }
+
+    private double gapPercentile(double percentile) {
+        long wanted = (long) Math.ceil(gapTotal * percentile);
+        long seen = 0;
+        for (int i = 0; i < GAP_BUCKETS; i++) {
+            seen += gapCounts[i];
+            if (seen >= wanted && seen > 0) {
+                return (i + 1) / 10.0;
+            }
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        String host = args.length > 2 ? args[2] : "127.0.0.1";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+        String mode = args.length > 4 ? args[4] : "full";
+        LoadClient loadClient = new LoadClient(mode.equals("delta"));
+        if (mode.equals("spectate")) {
+            loadClient.setSpectateGame(args.length > 5 ? Integer.parseInt(args[5]) : 0);
+        }
+        loadClient.run(clients, seconds, host, port);
+    }
+}
@@ -8,18 +8,62 @@ import java.awt.Graphics;
 import java.awt.Color;
 
 public class Maze {
+    // directions in the order of the neighbors array, bit i of the exit mask is DIRECTIONS[i]
+    // a direction's reverse is always at index ^ 1
+    public static final int[] DIRECTIONS = {Constants.UP, Constants.DOWN, Constants.LEFT, Constants.RIGHT};
+
     private Vector position;
+    private int fixedX; // the position in 16.16 fixed point (see FixedPoint), for pacman and ghosts in fixed point mode
+    private int fixedY;
     private Maze[] neighbors;
+    private int index; // where this node is in MazeGroup's node list
+    private int col;   // tile the node sits on
+    private int row;
+    private int exitMask; // one bit per connected neighbor, set up by MazeGroup once the maze is built
 
     public Maze(int x, int y) {
         this.position = new Vector(x, y);
+        this.fixedX = x << FixedPoint.SHIFT;
+        this.fixedY = y << FixedPoint.SHIFT;
         this.neighbors = new Maze[4]; // UP, DOWN, LEFT, RIGHT
+        this.index = -1;
+        this.col = x / Constants.TILE_WIDTH;
+        this.row = y / Constants.TILE_HEIGHT;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    // index of a node that may be null, -1 if it is
+    public static int indexOf(Maze node) {
+        return node == null ? -1 : node.index;
     }
 
     public Vector getPosition() {
         return position;
     }
 
+    public int getFixedX() {
+        return fixedX;
+    }
+
+    public int getFixedY() {
+        return fixedY;
+    }
+
     public Maze[] getNeighbors() {
         return neighbors;
     }
@@ -32,7 +76,36 @@ public class Maze {
         return this.neighbors[getDirectionIndex(direction)];
     }
 
-    private int getDirectionIndex(int direction) {
+    // work out the exit mask from the neighbors, called after all the connections are made
+    public void computeExitMask() {
+        exitMask = 0;
+        for (int i = 0; i < neighbors.length; i++) {
+            if (neighbors[i] != null) {
+                exitMask |= 1 << i;
+            }
+        }
+    }
+
+    public int getExitMask() {
+        return exitMask;
+    }
+
+    // the exit mask bit for a direction, 0 for STOP
+    public static int directionBit(int direction) {
+        int index = getDirectionIndex(direction);
+        return index < 0 ? 0 : 1 << index;
+    }
+
+    // which way x goes when moving in a direction: -1, 0 or 1 (screen y grows downwards, see directionY)
+    public static int directionX(int direction) {
+        return direction == Constants.LEFT ? -1 : direction == Constants.RIGHT ? 1 : 0;
+    }
+
+    public static int directionY(int direction) {
+        return direction == Constants.UP ? -1 : direction == Constants.DOWN ? 1 : 0;
+    }
+
+    public static int getDirectionIndex(int direction) {
         switch (direction) {
             case Constants.UP: return 0;
             case Constants.DOWN: return 1;
@@ -1,5 +1,6 @@
 import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.awt.Color;
 
@@ -7,6 +8,10 @@ public class MazeGroup {
     private List<Maze> nodeList;
     private char[][] mazeData;
     private List<Pellet> pellets;
+    private int pelletCols;
+    private int[] pelletGrid; // pellet index on each tile (row * pelletCols + col), -1 if there is none
+    private volatile DistanceField distanceField; // built the first time something asks
+    private volatile Maze[] ghostStartNodes; // worked out the first time a game asks, the same for every game after
 
     public MazeGroup(char[][] maze) {
         this.nodeList = new ArrayList<>();
@@ -16,25 +21,74 @@ public class MazeGroup {
         buildPellets(maze);
     }
 
+    // shortest path distances between nodes, shared by everything that plays on this maze
+    public DistanceField getDistanceField() {
+        DistanceField field = distanceField;
+        if (field == null) {
+            synchronized (this) {
+                if (distanceField == null) {
+                    distanceField = new DistanceField(this);
+                }
+                field = distanceField;
+            }
+        }
+        return field;
+    }
+
 
     private void buildPellets(char[][] maze) {
+        for (char[] line : maze) {
+            pelletCols = Math.max(pelletCols, line.length);
+        }
+        pelletGrid = new int[maze.length * pelletCols];
+        Arrays.fill(pelletGrid, -1);
+
         for (int row = 0; row < maze.length; row++) {
             for (int col = 0; col < maze[row].length; col++) {
                 if (maze[row][col] == Constants.PATH) { // '.' tile
                     int x = col * Constants.TILE_WIDTH + Constants.TILE_WIDTH/2;
                     int y = row * Constants.TILE_HEIGHT + Constants.TILE_HEIGHT/2;
+                    pelletGrid[row * pelletCols + col] = pellets.size();
                     pellets.add(new Pellet(new Vector(x, y)));
                 }
             }
         }
     }
+
+    // index of the pellet on a tile, -1 if the tile has none (or is outside the maze)
+    public int getPelletAt(int col, int row) {
+        if (col < 0 || col >= pelletCols || row < 0 || row >= mazeData.length) {
+            return -1;
+        }
+        return pelletGrid[row * pelletCols + col];
+    }
     public List<Pellet> getPellets() {
         return pellets;
     }
 
-    public void renderPellets(Graphics g) {
-        for (Pellet pellet : pellets) {
-            pellet.render(g);
+    // 64 bit FNV-1a hash of the maze layout, the same maze file always gives the same number
+    // replays keep it to check they are played on the maze they were recorded on
+    public long getMazeHash() {
+        long hash = 0xCBF29CE484222325L;
+        for (char[] line : mazeData) {
+            for (char c : line) {
+                hash = (hash ^ c) * 0x100000001B3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001B3L; // so rows of different lengths can't line up the same
+        }
+        return hash;
+    }
+
+    public char[][] getMazeData() {
+        return mazeData;
+    }
+
+    // draw the pellets that haven't been eaten in this game
+    public void renderPellets(Graphics g, PelletState pelletState) {
+        for (int i = 0; i < pellets.size(); i++) {
+            if (!pelletState.isEaten(i)) {
+                pellets.get(i).render(g);
+            }
         }
     }
 
@@ -49,6 +103,7 @@ public class MazeGroup {
                                 row * Constants.TILE_HEIGHT + Constants.TILE_HEIGHT / 2
                         );
 
+                        nodeGrid[row][col].setIndex(nodeList.size());
                         nodeList.add(nodeGrid[row][col]);
                     }
                 }
@@ -62,6 +117,11 @@ public class MazeGroup {
                     }
                 }
             }
+
+            // every node's exits as bits, so the ghosts don't have to build lists of directions
+            for (Maze node : nodeList) {
+                node.computeExitMask();
+            }
         }
 
         private void connectWithWallCheck(Maze[][] nodeGrid, char[][] maze, int row, int col) {
@@ -110,6 +170,11 @@ public class MazeGroup {
         return nodeList;
     }
 
+    // node by its index in the node list, -1 means no node
+    public Maze getNode(int index) {
+        return index < 0 ? null : nodeList.get(index);
+    }
+
     public void render(Graphics g) {
         for (Maze node : nodeList) {
             node.render(g);
@@ -153,7 +218,21 @@ public class MazeGroup {
         return null;
     }
 
+    // where the four ghosts start, every game on this maze (a server builds one per session) shares the answer
     public Maze[] getGhostStartNodes() {
+        Maze[] startNodes = ghostStartNodes;
+        if (startNodes == null) {
+            synchronized (this) {
+                if (ghostStartNodes == null) {
+                    ghostStartNodes = findGhostStartNodes();
+                }
+                startNodes = ghostStartNodes;
+            }
+        }
+        return startNodes.clone();
+    }
+
+    private Maze[] findGhostStartNodes() {
         Maze[] ghostNodes = new Maze[4];
 
         if (nodeList.isEmpty()) {
@@ -0,0 +1,267 @@
+// this class plays pacman by itself using Monte Carlo tree search on the headless simulation
+// it only makes a choice when pacman is about to reach a node, and only between that node's exits,
+// every core grows its own search tree from the same snapshot (root parallel) until the time budget
+// runs out, then the trees vote with their visit counts
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MctsAutopilot {
+    // the exits of a node in the order of their exit mask bits
+    private static final int[] DIRECTIONS = Maze.DIRECTIONS;
+
+    // search settings
+    private static final double EXPLORATION = 1.4;
+    private static final int MAX_TREE_DEPTH = 32;
+    private static final int ROLLOUT_DECISIONS = 8;
+    private static final double MAX_MOVE_SECONDS = 2; // a move that doesn't reach a node in time is cut short
+    private static final double DEATH_PENALTY = 50;  // a lost life is worth this many pellets
+
+    private MazeGroup nodes;
+    private long budgetNanos;
+    private ExecutorService pool;
+    private List<Worker> workers;
+
+    // the last decision, reused until pacman heads for another node
+    private Maze decidedFor;
+    private int decision = Constants.STOP;
+
+    // one search thread per core, each decision may think for budgetMillis
+    public MctsAutopilot(MazeGroup nodes, long budgetMillis) {
+        this(nodes, budgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MctsAutopilot(MazeGroup nodes, long budgetMillis, int threads) {
+        this(nodes, budgetMillis, threads, 0);
+    }
+
+    // the search threads draw their random playouts from the streams of seed, so a search can be repeated
+    public MctsAutopilot(MazeGroup nodes, long budgetMillis, int threads, long seed) {
+        this.nodes = nodes;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-autopilot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = new ArrayList<>();
+        RngService rng = new RngService(seed);
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker(i, rng.stream(RngService.AUTOPILOT, i)));
+        }
+    }
+
+    // the direction pacman should hold right now, a new search only runs when pacman heads for a new node
+    public int decide(GameSimulation game) {
+        Maze decisionNode = decisionNode(game.getPacman());
+        if (decisionNode != decidedFor) {
+            decidedFor = decisionNode;
+            decision = search(game);
+        }
+        return decision;
+    }
+
+    // search from the current state of the game and return the best exit of the next node
+    public int search(GameSimulation game) {
+        if (game.getNodes() != nodes) {
+            throw new IllegalArgumentException("Autopilot was built for a different maze");
+        }
+
+        GameSnapshot root = GameSnapshot.capture(game);
+        long deadline = System.nanoTime() + budgetNanos;
+        for (Worker worker : workers) {
+            worker.prepare(root, deadline);
+        }
+
+        // add up the root visits of every tree
+        int[] visits = new int[DIRECTIONS.length];
+        try {
+            for (Future<int[]> result : pool.invokeAll(workers)) {
+                int[] workerVisits = result.get();
+                for (int i = 0; i < visits.length; i++) {
+                    visits[i] += workerVisits[i];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+
+        int best = -1;
+        for (int i = 0; i < visits.length; i++) {
+            if (visits[i] > 0 && (best < 0 || visits[i] > visits[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? Constants.STOP : DIRECTIONS[best];
+    }
+
+    // stop the search threads
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // the node pacman has to choose an exit for next
+    private static Maze decisionNode(Pacman pacman) {
+        return pacman.getTarget() != null ? pacman.getTarget() : pacman.getNode();
+    }
+
+    // one position in a search tree, reached by playing the moves on the path from the root
+    private static class TreeNode {
+        TreeNode[] children = new TreeNode[DIRECTIONS.length];
+        int exits = -1; // not looked at yet
+        int visits;
+        double value;
+    }
+
+    // grows one search tree on its own copy of the game
+    private class Worker implements Callable<int[]> {
+        private GameSimulation simulation;
+        private EventDrivenRunner runner; // plays ahead from node to node instead of tick by tick
+        private GameState gameState;
+        private SplittableRandom random;
+        private TreeNode[] path = new TreeNode[MAX_TREE_DEPTH + 1];
+        private GameSnapshot root;
+        private long deadline;
+
+        Worker(int id, SplittableRandom random) {
+            this.gameState = new GameState();
+            EventBus eventBus = new EventBus();
+            eventBus.subscribe(gameState);
+            this.simulation = new GameSimulation(nodes, gameState, eventBus, id);
+            this.runner = new EventDrivenRunner(simulation);
+            this.random = random;
+        }
+
+        void prepare(GameSnapshot root, long deadline) {
+            this.root = root;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int[] call() {
+            TreeNode tree = new TreeNode();
+            do {
+                iterate(tree);
+            } while (System.nanoTime() < deadline);
+
+            int[] visits = new int[DIRECTIONS.length];
+            for (int i = 0; i < visits.length; i++) {
+                if (tree.children[i] != null) {
+                    visits[i] = tree.children[i].visits;
+                }
+            }
+            return visits;
+        }
+
+        // one round of selection, expansion, rollout and backup
+        private void iterate(TreeNode tree) {
+            root.restore(simulation);
+            int startScore = gameState.getScore();
+            int startLives = gameState.getLives();
+
+            TreeNode node = tree;
+            int depth = 0;
+            path[depth++] = node;
+
+            // walk down the tree until we add a new node
+            while (gameState.isPlaying() && depth <= MAX_TREE_DEPTH) {
+                if (node.exits < 0) {
+                    node.exits = decisionNode(simulation.getPacman()).getExitMask();
+                }
+                if (node.exits == 0) {
+                    break;
+                }
+
+                int choice = unexpandedExit(node);
+                boolean expanded = choice >= 0;
+                if (!expanded) {
+                    choice = bestExit(node);
+                } else {
+                    node.children[choice] = new TreeNode();
+                }
+
+                move(DIRECTIONS[choice]);
+                node = node.children[choice];
+                path[depth++] = node;
+                if (expanded) {
+                    break;
+                }
+            }
+
+            // play on randomly without turning back
+            for (int i = 0; i < ROLLOUT_DECISIONS && gameState.isPlaying(); i++) {
+                int exits = decisionNode(simulation.getPacman()).getExitMask();
+                int reverse = Maze.directionBit(-simulation.getPacman().getCurrentDirection());
+                if ((exits & ~reverse) != 0) {
+                    exits &= ~reverse;
+                }
+                if (exits == 0) {
+                    break;
+                }
+                move(DIRECTIONS[randomBit(exits)]);
+            }
+
+            double livesLost = startLives - gameState.getLives();
+            if (gameState.getCurrentState() == Constants.GAME_OVER) {
+                livesLost = Math.max(livesLost, 1);
+            }
+            double value = (gameState.getScore() - startScore) / (double) Constants.DOT_SCORE - DEATH_PENALTY * livesLost;
+
+            for (int i = 0; i < depth; i++) {
+                path[i].visits++;
+                path[i].value += value;
+            }
+        }
+
+        // hold a direction until pacman reaches the next node (or the game stops)
+        private void move(int direction) {
+            simulation.getPacman().setInputDirection(direction);
+            runner.advanceToNextNode(MAX_MOVE_SECONDS);
+        }
+
+        private int unexpandedExit(TreeNode node) {
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if ((node.exits & (1 << i)) != 0 && node.children[i] == null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // UCB1 over the children of a fully expanded node
+        private int bestExit(TreeNode node) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(node.visits);
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                TreeNode child = node.children[i];
+                if (child == null) {
+                    continue;
+                }
+                double score = child.value / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        // index of a random set bit
+        private int randomBit(int bits) {
+            int n = random.nextInt(Integer.bitCount(bits));
+            for (int i = 0; i < n; i++) {
+                bits &= bits - 1;
+            }
+            return Integer.numberOfTrailingZeros(bits);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+// this class is the state of a game as a network client sees it after one tick: the stats, where pacman and the
+// ghosts are (in whole pixels), which way they go, the ghosts' behavior and which pellets are eaten
+// DeltaEncoder keeps the frames it sent, DeltaDecoder the ones it received, so both sides can work out what changed
+// entity 0 is pacman, the ghosts follow in order
+
+import java.util.Arrays;
+import java.util.List;
+
+public class NetFrame {
+    int tick = -1;
+    int score;
+    int lives;
+    int state;
+    int[] x;
+    int[] y;
+    int[] direction;
+    int[] behavior;
+    long[] eaten;
+    int pelletCount;
+
+    public NetFrame(int pelletCount, int entityCount) {
+        this.pelletCount = pelletCount;
+        this.x = new int[entityCount];
+        this.y = new int[entityCount];
+        this.direction = new int[entityCount];
+        this.behavior = new int[entityCount];
+        this.eaten = new long[(pelletCount + 63) / 64];
+    }
+
+    // fill the frame from a game, nothing is allocated
+    public void capture(GameSimulation simulation, int tick) {
+        this.tick = tick;
+        GameState gameState = simulation.getGameState();
+        score = gameState.getScore();
+        lives = gameState.getLives();
+        state = gameState.getCurrentState();
+
+        Pacman pacman = simulation.getPacman();
+        x[0] = (int) Math.round(pacman.getPosition().getX());
+        y[0] = (int) Math.round(pacman.getPosition().getY());
+        direction[0] = pacman.getCurrentDirection();
+        behavior[0] = 0;
+
+        List<Ghost> ghosts = simulation.getGhostAI().getGhosts();
+        for (int i = 0; i < ghosts.size(); i++) {
+            Ghost ghost = ghosts.get(i);
+            x[i + 1] = (int) Math.round(ghost.getPosition().getX());
+            y[i + 1] = (int) Math.round(ghost.getPosition().getY());
+            direction[i + 1] = ghost.getDirection();
+            behavior[i + 1] = ghost.getBehavior();
+        }
+
+        PelletState pellets = simulation.getPelletState();
+        Arrays.fill(eaten, 0);
+        for (int i = 0; i < pelletCount; i++) {
+            if (pellets.isEaten(i)) {
+                eaten[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    public void copyFrom(NetFrame other) {
+        tick = other.tick;
+        score = other.score;
+        lives = other.lives;
+        state = other.state;
+        System.arraycopy(other.x, 0, x, 0, x.length);
+        System.arraycopy(other.y, 0, y, 0, y.length);
+        System.arraycopy(other.direction, 0, direction, 0, direction.length);
+        System.arraycopy(other.behavior, 0, behavior, 0, behavior.length);
+        System.arraycopy(other.eaten, 0, eaten, 0, eaten.length);
+    }
+
+    // true if every pellet eaten in the other frame is eaten in this one too (no new game in between)
+    public boolean eatenIncludes(NetFrame other) {
+        for (int i = 0; i < eaten.length; i++) {
+            if ((other.eaten[i] & ~eaten[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean sameAs(NetFrame other) {
+        return tick == other.tick && score == other.score && lives == other.lives && state == other.state
+                && Arrays.equals(x, other.x) && Arrays.equals(y, other.y)
+                && Arrays.equals(direction, other.direction)
+                && Arrays.equals(behavior, other.behavior)
+                && Arrays.equals(eaten, other.eaten);
+    }
+
+    // getters
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public int getEntityCount() {
+        return x.length;
+    }
+
+    public int getX(int entity) {
+        return x[entity];
+    }
+
+    public int getY(int entity) {
+        return y[entity];
+    }
+
+    public int getDirection(int entity) {
+        return direction[entity];
+    }
+
+    public int getBehavior(int entity) {
+        return behavior[entity];
+    }
+
+    public boolean isEaten(int pellet) {
+        return (eaten[pellet >>> 6] & (1L << pellet)) != 0;
+    }
+}
@@ -0,0 +1,170 @@
+// this class writes the state of a GameSimulation into a reusable direct ByteBuffer every tick,
+// so an agent can read the maze as a tensor without copying it or creating any Java objects
+//
+// layout: PLANES planes of rows * cols bytes each, one byte per tile, row by row
+//   byte at (plane * rows * cols) + (row * cols) + col
+//   plane 0 WALLS       1 where the maze file has a wall
+//   plane 1 PELLETS     1 where a pellet has not been eaten yet
+//   plane 2 PACMAN      1 on pacman's tile
+//   plane 3 CHASE       number of ghosts on the tile in chase mode
+//   plane 4 SCATTER     number of ghosts on the tile in scatter mode
+//   plane 5 FRIGHTENED  number of ghosts on the tile in frightened mode
+//   plane 6 EATEN       number of ghosts on the tile that were eaten
+// ghost counts stop at 255
+//
+// subscribe it to the simulation's event bus so eaten pellets get cleared (PacmanEnv does)
+// after a reset call encodeAll(), after every step call update(): only the tiles that changed get written
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class ObservationEncoder implements GameEventListener {
+    // plane numbers, the ghost planes are GHOST_PLANES + the ghost's behavior
+    public static final int WALLS = 0;
+    public static final int PELLETS = 1;
+    public static final int PACMAN = 2;
+    public static final int GHOST_PLANES = 3;
+    public static final int PLANES = GHOST_PLANES + 4;
+
+    private GameSimulation simulation;
+    private int rows;
+    private int cols;
+    private int planeSize;
+    private ByteBuffer buffer;
+
+    // tile each pellet sits on
+    private int[] pelletTiles;
+
+    // where we last drew pacman and each ghost (buffer offsets), so we only touch what moved
+    private int pacmanOffset;
+    private int[] ghostOffsets;
+
+    // exact ghost counts per offset, the buffer only holds a byte
+    private int[] counts;
+
+    public ObservationEncoder(GameSimulation simulation) {
+        this.simulation = simulation;
+
+        char[][] maze = simulation.getNodes().getMazeData();
+        this.rows = maze.length;
+        this.cols = maze[0].length;
+        this.planeSize = rows * cols;
+        this.buffer = ByteBuffer.allocateDirect(PLANES * planeSize);
+        this.counts = new int[PLANES * planeSize];
+
+        List<Pellet> pellets = simulation.getNodes().getPellets();
+        this.pelletTiles = new int[pellets.size()];
+        for (int i = 0; i < pellets.size(); i++) {
+            Vector pos = pellets.get(i).getPosition();
+            pelletTiles[i] = tileOf(pos.getX(), pos.getY());
+        }
+
+        this.ghostOffsets = new int[simulation.getGhostAI().getGhosts().size()];
+
+        rebuild();
+    }
+
+    // rebuild the whole buffer, needed after a reset since every pellet comes back
+    public void encodeAll() {
+        rebuild();
+    }
+
+    private void rebuild() {
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        Arrays.fill(counts, 0);
+
+        char[][] maze = simulation.getNodes().getMazeData();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (maze[row][col] == Constants.WALL) {
+                    buffer.put(WALLS * planeSize + row * cols + col, (byte) 1);
+                }
+            }
+        }
+
+        PelletState pelletState = simulation.getPelletState();
+        for (int i = 0; i < pelletTiles.length; i++) {
+            if (!pelletState.isEaten(i)) {
+                buffer.put(PELLETS * planeSize + pelletTiles[i], (byte) 1);
+            }
+        }
+
+        pacmanOffset = pacmanOffset();
+        buffer.put(pacmanOffset, (byte) 1);
+
+        List<Ghost> ghosts = simulation.getGhostAI().getGhosts();
+        for (int i = 0; i < ghostOffsets.length; i++) {
+            ghostOffsets[i] = ghostOffset(ghosts.get(i));
+            addGhost(ghostOffsets[i], 1);
+        }
+    }
+
+    // move pacman and the ghosts to their new tiles, call this after the tick's events were dispatched
+    public void update() {
+        int newPacman = pacmanOffset();
+        if (newPacman != pacmanOffset) {
+            buffer.put(pacmanOffset, (byte) 0);
+            buffer.put(newPacman, (byte) 1);
+            pacmanOffset = newPacman;
+        }
+
+        List<Ghost> ghosts = simulation.getGhostAI().getGhosts();
+        for (int i = 0; i < ghostOffsets.length; i++) {
+            int newOffset = ghostOffset(ghosts.get(i));
+            if (newOffset != ghostOffsets[i]) {
+                addGhost(ghostOffsets[i], -1);
+                addGhost(newOffset, 1);
+                ghostOffsets[i] = newOffset;
+            }
+        }
+    }
+
+    // eaten pellets disappear from the pellet plane
+    @Override
+    public void onEvents(EventBus events) {
+        for (int i = 0; i < events.size(); i++) {
+            if (events.getType(i) == Constants.PELLET_EATEN) {
+                buffer.put(PELLETS * planeSize + pelletTiles[events.getValue(i)], (byte) 0);
+            }
+        }
+    }
+
+    private void addGhost(int offset, int amount) {
+        counts[offset] += amount;
+        buffer.put(offset, (byte) Math.min(counts[offset], 255));
+    }
+
+    private int pacmanOffset() {
+        Vector pos = simulation.getPacman().getPosition();
+        return PACMAN * planeSize + tileOf(pos.getX(), pos.getY());
+    }
+
+    private int ghostOffset(Ghost ghost) {
+        Vector pos = ghost.getPosition();
+        return (GHOST_PLANES + ghost.getBehavior()) * planeSize + tileOf(pos.getX(), pos.getY());
+    }
+
+    // tile index (row * cols + col) of a pixel position, kept inside the maze
+    private int tileOf(double x, double y) {
+        int col = Math.max(0, Math.min(cols - 1, (int) (x / Constants.TILE_WIDTH)));
+        int row = Math.max(0, Math.min(rows - 1, (int) (y / Constants.TILE_HEIGHT)));
+        return row * cols + col;
+    }
+
+    // getters
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+}
@@ -10,6 +10,7 @@ import java.util.Map;
 public class Pacman implements KeyListener {
     private int name;
     private Vector position;
+    private Vector previousPosition; // where the last update started, pacman moved in a straight line from there
     private Map<Integer, Vector> directions;
     private int direction;
     private double speed;
@@ -19,7 +20,18 @@ public class Pacman implements KeyListener {
     private Maze target;
     private double mouthAngle = 45;
     private boolean mouthClosing = false;
-    private double animTimer = 0;
+    private GameTimer mouthTimer = new GameTimer(this::animateMouth);
+    private TimerWheel timers;
+
+    // in fixed point mode the position is kept in fixedX and fixedY (16.16, see FixedPoint), moving and the
+    // overshoot check are int math. position and previousPosition are then pacman's own two vectors, filled in
+    // from the ints after every update for drawing and collisions
+    private boolean fixedPoint = false;
+    private int fixedX;
+    private int fixedY;
+    private int fixedStep; // fixed point pixels moved per update, worked out again when the speed or dt change
+    private double fixedStepSpeed = -1;
+    private double fixedStepDt = -1;
 
 
     // keep track of currently pressed keys
@@ -28,6 +40,9 @@ public class Pacman implements KeyListener {
     private boolean leftPressed = false;
     private boolean rightPressed = false;
 
+    // how many numbers saveState/loadState use
+    public static final int STATE_SIZE = 5;
+
     public Pacman(Maze startNode) {
         this.name = Constants.PACMAN;
         this.position = new Vector(200, 400);
@@ -51,11 +66,61 @@ public class Pacman implements KeyListener {
     }
 
     public void setPosition() {
+        if (this.fixedPoint) {
+            this.fixedX = this.node.getFixedX();
+            this.fixedY = this.node.getFixedY();
+            this.syncPosition(true);
+            return;
+        }
         this.position = this.node.getPosition().copy();
+        this.previousPosition = this.position;
+    }
+
+    // fill in the position vector from the fixed point position, and previousPosition as well if pacman stayed put
+    private void syncPosition(boolean stayed) {
+        this.position.setX(FixedPoint.toDouble(this.fixedX));
+        this.position.setY(FixedPoint.toDouble(this.fixedY));
+        if (stayed) {
+            this.previousPosition.setX(this.position.getX());
+            this.previousPosition.setY(this.position.getY());
+        }
+    }
+
+    // fixed point pixels moved in dt seconds, speed and dt only change now and then so the answer is kept
+    private int fixedStep(double dt) {
+        if (this.speed != this.fixedStepSpeed || dt != this.fixedStepDt) {
+            this.fixedStep = FixedPoint.multiply(FixedPoint.fromDouble(this.speed), FixedPoint.fromDouble(dt));
+            this.fixedStepSpeed = this.speed;
+            this.fixedStepDt = dt;
+        }
+        return this.fixedStep;
+    }
+
+    // put pacman back on a node standing still, the key state is kept since the keys are still held
+    public void reset(Maze startNode) {
+        this.direction = Constants.STOP;
+        this.node = startNode;
+        this.target = startNode;
+        this.setPosition();
+    }
+
+    // steer pacman without a keyboard (agents, autopilots), works like holding down that arrow key
+    public void setInputDirection(int direction) {
+        upPressed = direction == Constants.UP;
+        downPressed = direction == Constants.DOWN;
+        leftPressed = direction == Constants.LEFT;
+        rightPressed = direction == Constants.RIGHT;
     }
 
     // check if pacman has overshot the target node
     public boolean overshot() {
+        if (this.target != null && this.fixedPoint) {
+            long toTargetX = this.target.getFixedX() - this.node.getFixedX();
+            long toTargetY = this.target.getFixedY() - this.node.getFixedY();
+            long toSelfX = this.fixedX - this.node.getFixedX();
+            long toSelfY = this.fixedY - this.node.getFixedY();
+            return toSelfX * toSelfX + toSelfY * toSelfY >= toTargetX * toTargetX + toTargetY * toTargetY;
+        }
         if (this.target != null) {
             Vector vec1 = this.target.getPosition().subtract(this.node.getPosition());
             Vector vec2 = this.position.subtract(this.node.getPosition());
@@ -100,27 +165,26 @@ public class Pacman implements KeyListener {
     // this method updates an object's position over time based on its current direction
     // and speed, and then determines a new direction dynamically
     public void update(double dt) {
-        Vector movement = this.directions.get(this.direction);
-        movement = new Vector(movement.getX() * this.speed * dt, movement.getY() * this.speed * dt);
-        this.position = this.position.add(movement);
-
-        int newDirection = getValidKey();
+        if (this.fixedPoint) {
+            // the vector of the last update becomes the previous one, the other one is filled in at the end
+            Vector spare = this.previousPosition;
+            this.previousPosition = this.position;
+            this.position = spare;
+
+            int step = this.fixedStep(dt);
+            this.fixedX += Maze.directionX(this.direction) * step;
+            this.fixedY += Maze.directionY(this.direction) * step;
+        } else {
+            // position is replaced below, never changed in place, so the old one can be kept as it is
+            this.previousPosition = this.position;
 
-        // update mouth animations
-        animTimer += dt;
-        if (animTimer >= 0.05) { // animation speed
-            animTimer = 0;
-
-            // animate mouth open and close
-            if (mouthClosing) {
-                mouthAngle += 5;
-                if (mouthAngle >= 45) {
-                    mouthAngle = 45;
-                    mouthClosing = true;
-                }
-            }
+            Vector movement = this.directions.get(this.direction);
+            movement = new Vector(movement.getX() * this.speed * dt, movement.getY() * this.speed * dt);
+            this.position = this.position.add(movement);
         }
 
+        int newDirection = getValidKey();
+
         if (this.overshot()) {
             this.node = this.target;
             this.target = this.getNewTarget(newDirection);
@@ -132,13 +196,42 @@ public class Pacman implements KeyListener {
                     this.direction = Constants.STOP;
                 }
             }
-            this.setPosition();
+            // snap back onto the node, it lies on the way we just came so the path stays a straight line
+            if (this.fixedPoint) {
+                this.fixedX = this.node.getFixedX();
+                this.fixedY = this.node.getFixedY();
+            } else {
+                this.position = this.node.getPosition().copy();
+            }
         } else {
             if (this.oppositeDirection(newDirection)) {
                 this.reverseDirection();
             }
         }
 
+        if (this.fixedPoint) {
+            this.syncPosition(false);
+        }
+
+    }
+
+    // run the mouth animation on the game's timer wheel
+    public void setTimers(TimerWheel timers) {
+        this.timers = timers;
+        timers.scheduleSeconds(mouthTimer, 0.05); // animation speed
+    }
+
+    // update mouth animations
+    private void animateMouth() {
+        // animate mouth open and close
+        if (mouthClosing) {
+            mouthAngle += 5;
+            if (mouthAngle >= 45) {
+                mouthAngle = 45;
+                mouthClosing = true;
+            }
+        }
+        timers.scheduleSeconds(mouthTimer, 0.05);
     }
 
     public int getValidKey() {
@@ -241,6 +334,94 @@ public class Pacman implements KeyListener {
         return this.position;
     }
 
+    // seconds until pacman reaches his target node with the keys held as they are now,
+    // 0 if the next update changes his course anyway (leaving a node, turning around), infinite if he stays put
+    public double timeToNextNode() {
+        int key = getValidKey();
+        if (this.target == this.node) {
+            return getNewTarget(key) != this.node ? 0 : Double.POSITIVE_INFINITY;
+        }
+        if (this.oppositeDirection(key)) {
+            return 0;
+        }
+        double remaining = Math.abs(target.getPosition().getX() - position.getX())
+                + Math.abs(target.getPosition().getY() - position.getY());
+        return remaining / speed;
+    }
+
+    // switch fixed point positions on or off, switching on moves pacman onto the nearest fixed point position
+    public void setFixedPoint(boolean fixedPoint) {
+        if (fixedPoint && !this.fixedPoint) {
+            this.fixedX = FixedPoint.fromDouble(this.position.getX());
+            this.fixedY = FixedPoint.fromDouble(this.position.getY());
+            this.position = new Vector();
+            this.previousPosition = new Vector();
+            this.fixedPoint = true;
+            this.syncPosition(true);
+        }
+        this.fixedPoint = fixedPoint;
+    }
+
+    public boolean isFixedPoint() {
+        return this.fixedPoint;
+    }
+
+    // where pacman was before the last update, the same as getPosition() after a reset
+    public Vector getPreviousPosition() {
+        return this.previousPosition;
+    }
+
+    // write pacman's moving parts into state starting at offset, returns the offset after them
+    public int saveState(double[] state, int offset) {
+        state[offset] = Maze.indexOf(node);
+        state[offset + 1] = Maze.indexOf(target);
+        state[offset + 2] = position.getX();
+        state[offset + 3] = position.getY();
+        state[offset + 4] = direction;
+        return offset + STATE_SIZE;
+    }
+
+    // read back what saveState wrote, nodes are looked up in the maze pacman lives in
+    public int loadState(double[] state, int offset, MazeGroup nodes) {
+        node = nodes.getNode((int) state[offset]);
+        target = nodes.getNode((int) state[offset + 1]);
+        if (fixedPoint) {
+            fixedX = FixedPoint.fromDouble(state[offset + 2]);
+            fixedY = FixedPoint.fromDouble(state[offset + 3]);
+            syncPosition(true);
+        } else {
+            position.setX(state[offset + 2]);
+            position.setY(state[offset + 3]);
+            previousPosition = position;
+        }
+        direction = (int) state[offset + 4];
+        return offset + STATE_SIZE;
+    }
+
+    // tile pacman is on
+    public int getTileCol() {
+        return (int) (this.position.getX() / Constants.TILE_WIDTH);
+    }
+
+    public int getTileRow() {
+        return (int) (this.position.getY() / Constants.TILE_HEIGHT);
+    }
+
+    // node pacman last passed (or is standing on)
+    public Maze getNode() {
+        return this.node;
+    }
+
+    // node pacman is heading to, the same as getNode() when standing still
+    public Maze getTarget() {
+        return this.target;
+    }
+
+    // the direction pacman is moving in (Constants.UP, DOWN, ...)
+    public int getCurrentDirection() {
+        return this.direction;
+    }
+
     // getter need for ghost.java
     public Vector getDirection() {
         Vector dirVector;
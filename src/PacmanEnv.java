@@ -0,0 +1,140 @@
+// this class wraps the game as a reinforcement learning environment, like the ones in gym:
+// reset(seed) starts an episode and step(action) advances the game by one fixed tick without rendering anything
+// besides the small observation array, the whole maze is available as planes in getObservationBuffer()
+
+import java.nio.ByteBuffer;
+
+public class PacmanEnv {
+    // every step moves the game forward by the same amount of time
+    public static final double TICK = 1.0 / 60.0;
+
+    // actions an agent can take, step(action) takes an index into this array
+    public static final int[] ACTIONS = {Constants.STOP, Constants.UP, Constants.DOWN, Constants.LEFT, Constants.RIGHT};
+
+    // reward taken away when pacman loses a life
+    public static final double DEATH_PENALTY = 500;
+
+    // episodes are cut off after this many steps (about 5 minutes of game time)
+    public static final int DEFAULT_MAX_STEPS = 18000;
+
+    // observation layout: pacman col, row, direction, lives, pellets left, then col, row, behavior for each ghost
+    public static final int PACMAN_FIELDS = 5;
+    public static final int GHOST_FIELDS = 3;
+
+    private GameSimulation simulation;
+    private ObservationEncoder encoder;
+    private GameState gameState;
+    private EventBus eventBus;
+    private StepResult result;
+    private double[] observation;
+    private int maxSteps;
+    private int steps;
+    private boolean levelCleared;
+
+    public PacmanEnv(char[][] maze) {
+        this(maze, DEFAULT_MAX_STEPS);
+    }
+
+    public PacmanEnv(char[][] maze, int maxSteps) {
+        this.maxSteps = maxSteps;
+        this.gameState = new GameState();
+        this.eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        eventBus.subscribe(events -> {
+            if (events.countOf(Constants.LEVEL_CLEARED) > 0) {
+                levelCleared = true;
+            }
+        });
+
+        this.simulation = new GameSimulation(new MazeGroup(maze), gameState, eventBus, 0);
+        this.observation = new double[PACMAN_FIELDS + GHOST_FIELDS * simulation.getGhostAI().getGhosts().size()];
+        this.result = new StepResult(observation);
+        this.encoder = new ObservationEncoder(simulation);
+        eventBus.subscribe(encoder); // pellets are cleared as their events come in
+    }
+
+    // start a new episode, the seed decides how the ghosts move when they are frightened
+    public double[] reset(long seed) {
+        simulation.reset(seed);
+        simulation.getPacman().setInputDirection(Constants.STOP);
+        eventBus.clear();
+        steps = 0;
+        levelCleared = false;
+        encoder.encodeAll();
+        observe();
+        return observation;
+    }
+
+    // hold the arrow key for the given action for one tick
+    public StepResult step(int action) {
+        int scoreBefore = gameState.getScore();
+
+        simulation.getPacman().setInputDirection(ACTIONS[action]);
+        simulation.step(TICK);
+        eventBus.dispatch();
+        steps++;
+
+        double reward = gameState.getScore() - scoreBefore;
+
+        // no death animation here, pacman goes straight back to the start
+        if (gameState.inDeathAnimation()) {
+            reward -= DEATH_PENALTY;
+            gameState.continueAfterDeath();
+            simulation.resetPositions();
+        } else if (gameState.getCurrentState() == Constants.GAME_OVER) {
+            reward -= DEATH_PENALTY;
+        }
+
+        boolean done = levelCleared || gameState.getCurrentState() == Constants.GAME_OVER || steps >= maxSteps;
+
+        encoder.update();
+        observe();
+        result.set(reward, done);
+        return result;
+    }
+
+    // fill the observation array in place, nothing is allocated here
+    private void observe() {
+        Pacman pacman = simulation.getPacman();
+        observation[0] = pacman.getPosition().getX() / Constants.TILE_WIDTH;
+        observation[1] = pacman.getPosition().getY() / Constants.TILE_HEIGHT;
+        observation[2] = pacman.getCurrentDirection();
+        observation[3] = gameState.getLives();
+        observation[4] = simulation.getPelletsLeft();
+
+        int i = PACMAN_FIELDS;
+        for (Ghost ghost : simulation.getGhostAI().getGhosts()) {
+            observation[i] = ghost.getPosition().getX() / Constants.TILE_WIDTH;
+            observation[i + 1] = ghost.getPosition().getY() / Constants.TILE_HEIGHT;
+            observation[i + 2] = ghost.getBehavior();
+            i += GHOST_FIELDS;
+        }
+    }
+
+    // getters
+
+    public double[] getObservation() {
+        return observation;
+    }
+
+    // the maze planes described in ObservationEncoder, updated in place every step
+    public ByteBuffer getObservationBuffer() {
+        return encoder.getBuffer();
+    }
+
+    public ObservationEncoder getEncoder() {
+        return encoder;
+    }
+
+    public int getObservationSize() {
+        return observation.length;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+}
@@ -0,0 +1,111 @@
+// this class runs many PacmanEnv games side by side and steps them all at once on a fork-join pool,
+// episodes that finish are reset right away so every slot always has a game going
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class PacmanVecEnv {
+    // below this many envs a task steps them itself instead of splitting further
+    private static final int ENVS_PER_TASK = 8;
+
+    private PacmanEnv[] envs;
+    private ForkJoinPool pool;
+
+    // results of the last step, index i belongs to env i
+    private double[] rewards;
+    private boolean[] dones;
+    private double[][] observations;
+
+    // seeds handed to envs when their episode ends
+    private long nextSeed;
+
+    public PacmanVecEnv(char[][] maze, int numEnvs) {
+        this(maze, numEnvs, ForkJoinPool.commonPool());
+    }
+
+    public PacmanVecEnv(char[][] maze, int numEnvs, ForkJoinPool pool) {
+        this.pool = pool;
+        this.envs = new PacmanEnv[numEnvs];
+        this.rewards = new double[numEnvs];
+        this.dones = new boolean[numEnvs];
+        this.observations = new double[numEnvs][];
+        for (int i = 0; i < numEnvs; i++) {
+            envs[i] = new PacmanEnv(maze);
+            observations[i] = envs[i].getObservation();
+        }
+    }
+
+    // start a new episode in every env, env i gets seed + i
+    public double[][] reset(long seed) {
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].reset(seed + i);
+            dones[i] = false;
+            rewards[i] = 0;
+        }
+        nextSeed = seed + envs.length;
+        return observations;
+    }
+
+    // step env i with actions[i], the results land in getRewards(), getDones() and getObservations()
+    public void step(int[] actions) {
+        // seeds for the envs that will need a reset are picked up front so the result doesn't depend on thread timing
+        pool.invoke(new StepTask(actions, 0, envs.length, nextSeed));
+        nextSeed += envs.length;
+    }
+
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int[] actions;
+        private int from;
+        private int to;
+        private long seedBase;
+
+        StepTask(int[] actions, int from, int to, long seedBase) {
+            this.actions = actions;
+            this.from = from;
+            this.to = to;
+            this.seedBase = seedBase;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ENVS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    StepResult result = envs[i].step(actions[i]);
+                    rewards[i] = result.getReward();
+                    dones[i] = result.isDone();
+                    if (dones[i]) {
+                        // the observation is now the first one of the next episode
+                        envs[i].reset(seedBase + i);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new StepTask(actions, from, mid, seedBase), new StepTask(actions, mid, to, seedBase));
+        }
+    }
+
+    // getters
+
+    public int size() {
+        return envs.length;
+    }
+
+    public PacmanEnv getEnv(int i) {
+        return envs[i];
+    }
+
+    public double[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public double[][] getObservations() {
+        return observations;
+    }
+}
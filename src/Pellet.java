@@ -1,14 +1,14 @@
 import java.awt.Color;
 import java.awt.Graphics;
 
+// a pellet only knows where it is, whether it has been eaten lives in the game's PelletState
+// so the same maze (and its pellets) can be shared by many games at once
 public class Pellet {
     private Vector position;
-    private boolean eaten;
     private int radius;
 
     public Pellet(Vector position) {
         this.position = position;
-        this.eaten = false;
         this.radius = 4; // small size for dot
     }
 
@@ -16,19 +16,9 @@ public class Pellet {
         return position;
     }
 
-    public boolean isEaten() {
-        return eaten;
-    }
-
-    public void eat() {
-        eaten = true;
-    }
-
     public void render(Graphics g) {
-        if (!eaten) {
-            int[] pos = position.asInt();
-            g.setColor(Color.WHITE);
-            g.fillOval(pos[0] - radius, pos[1] - radius, radius * 2, radius * 2);
-        }
+        int[] pos = position.asInt();
+        g.setColor(Color.WHITE);
+        g.fillOval(pos[0] - radius, pos[1] - radius, radius * 2, radius * 2);
     }
 }
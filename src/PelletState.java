@@ -0,0 +1,75 @@
+// this class keeps track of which pellets of a maze have been eaten in one game, one bit per pellet
+// the bits are copy-on-write: a snapshot can hold on to them, and the game only copies them
+// the next time a pellet is eaten, so cloning a game never copies the pellet set up front
+// it also keeps a Zobrist hash of the eaten set (see StateHash), updated as each pellet is eaten
+
+import java.util.Arrays;
+
+public class PelletState {
+    private long[] eaten;
+    private boolean shared; // someone else (a snapshot) is holding on to the eaten array
+    private int total;
+    private int left;
+    private long hash; // xor of StateHash.pelletKey for every eaten pellet
+
+    public PelletState(int total) {
+        this.total = total;
+        this.eaten = new long[(total + 63) / 64];
+        this.left = total;
+    }
+
+    public boolean isEaten(int index) {
+        return (eaten[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void eat(int index) {
+        if (isEaten(index)) {
+            return;
+        }
+        if (shared) {
+            eaten = eaten.clone();
+            shared = false;
+        }
+        eaten[index >>> 6] |= 1L << index;
+        left--;
+        hash ^= StateHash.pelletKey(index);
+    }
+
+    // every pellet back for a new game
+    public void reset() {
+        if (shared) {
+            eaten = new long[eaten.length];
+            shared = false;
+        } else {
+            Arrays.fill(eaten, 0);
+        }
+        left = total;
+        hash = 0;
+    }
+
+    // hand out the eaten bits without copying them, they won't change after this
+    public long[] share() {
+        shared = true;
+        return eaten;
+    }
+
+    // take over bits that came from share(), they are copied before the next pellet is eaten
+    public void adopt(long[] bits, int pelletsLeft, long hash) {
+        this.eaten = bits;
+        this.shared = true;
+        this.left = pelletsLeft;
+        this.hash = hash;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
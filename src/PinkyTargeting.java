@@ -0,0 +1,14 @@
+// pinky (pink) ambushes: it heads for the tile 4 tiles in front of pacman
+
+import java.util.List;
+
+public class PinkyTargeting implements TargetingStrategy {
+    private static final int TILES_AHEAD = 4;
+
+    @Override
+    public void chooseTarget(Ghost ghost, Pacman pacman, List<Ghost> ghosts, int[] target) {
+        int dir = pacman.getCurrentDirection() + 2;
+        target[0] = pacman.getTileCol() + DIRECTION_COL[dir] * TILES_AHEAD;
+        target[1] = pacman.getTileRow() + DIRECTION_ROW[dir] * TILES_AHEAD;
+    }
+}
@@ -0,0 +1,207 @@
+// this class is a recorded level: what the game started from and the arrow key held on every tick
+// the game is deterministic for a given seed and maze, so that is enough to play the whole level again
+//
+// file layout (all numbers after the header longs are varints, 7 bits per byte, low bits first):
+//   int MAGIC, byte VERSION, long seed, long maze hash,
+//   ghost count, score, lives, level at the start, fixed point (1) or double (0) positions (not in version 1,
+//   those were all recorded with double positions),
+//   number of runs, then for every run: key (index into PacmanEnv.ACTIONS), how many ticks it was held
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class Replay {
+    public static final int MAGIC = 0x504D5250; // "PMRP"
+    public static final int VERSION = 2;
+
+    private long seed;
+    private long mazeHash;
+    private int ghostCount;
+    private int score;
+    private int lives;
+    private int level;
+    private boolean fixedPoint; // the game moved in fixed point (see GameSimulation.setFixedPoint)
+
+    // runs of the same key, keys[i] held for lengths[i] ticks
+    private int[] keys = new int[16];
+    private int[] lengths = new int[16];
+    private int runCount;
+    private long ticks;
+
+    public Replay(long seed, long mazeHash, int ghostCount, int score, int lives, int level) {
+        this.seed = seed;
+        this.mazeHash = mazeHash;
+        this.ghostCount = ghostCount;
+        this.score = score;
+        this.lives = lives;
+        this.level = level;
+    }
+
+    // one more tick with this direction held
+    public void addTick(int direction) {
+        int key = keyIndex(direction);
+        if (runCount > 0 && keys[runCount - 1] == key) {
+            lengths[runCount - 1]++;
+        } else {
+            addRun(key, 1);
+        }
+        ticks++;
+    }
+
+    private void addRun(int key, int length) {
+        if (runCount == keys.length) {
+            keys = Arrays.copyOf(keys, runCount * 2);
+            lengths = Arrays.copyOf(lengths, runCount * 2);
+        }
+        keys[runCount] = key;
+        lengths[runCount] = length;
+        runCount++;
+    }
+
+    // direction held on every tick, in order
+    public int[] getDirections() {
+        int[] directions = new int[(int) ticks];
+        int tick = 0;
+        for (int i = 0; i < runCount; i++) {
+            Arrays.fill(directions, tick, tick + lengths[i], PacmanEnv.ACTIONS[keys[i]]);
+            tick += lengths[i];
+        }
+        return directions;
+    }
+
+    // position of a direction in PacmanEnv.ACTIONS
+    private static int keyIndex(int direction) {
+        for (int i = 0; i < PacmanEnv.ACTIONS.length; i++) {
+            if (PacmanEnv.ACTIONS[i] == direction) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a direction: " + direction);
+    }
+
+    // reading and writing
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            out.writeLong(mazeHash);
+            writeVarint(out, ghostCount);
+            writeVarint(out, score);
+            writeVarint(out, lives);
+            writeVarint(out, level);
+            writeVarint(out, fixedPoint ? 1 : 0);
+            writeVarint(out, runCount);
+            for (int i = 0; i < runCount; i++) {
+                writeVarint(out, keys[i]);
+                writeVarint(out, lengths[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // can't happen writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Replay fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        Replay replay = new Replay(in.readLong(), in.readLong(),
+                readVarint(in), readVarint(in), readVarint(in), readVarint(in));
+        replay.fixedPoint = version >= 2 && readVarint(in) == 1;
+        int runs = readVarint(in);
+        for (int i = 0; i < runs; i++) {
+            int key = readVarint(in);
+            int length = readVarint(in);
+            if (key >= PacmanEnv.ACTIONS.length) {
+                throw new IOException("Bad key in replay: " + key);
+            }
+            replay.addRun(key, length);
+            replay.ticks += length;
+        }
+        return replay;
+    }
+
+    public void write(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, toBytes());
+    }
+
+    public static Replay read(Path file) throws IOException {
+        return fromBytes(Files.readAllBytes(file));
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    // getters
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getMazeHash() {
+        return mazeHash;
+    }
+
+    public int getGhostCount() {
+        return ghostCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    public void setFixedPoint(boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    // how many ticks were played
+    public long getTicks() {
+        return ticks;
+    }
+}
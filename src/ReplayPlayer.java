@@ -0,0 +1,172 @@
+// this class plays a recorded level again (see ReplayRecorder): it builds the same simulation from the seed in the
+// replay and holds the recorded key on every tick, so the game goes exactly the way it went when it was recorded
+// it can run headless as fast as it goes (to check a bug report or a score) or draw it in a window at any speed
+//
+// usage: java ReplayPlayer <replay file> [speed]   speed 0 runs headless, 1 is normal speed, 4 is four times as fast
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class ReplayPlayer {
+    private Replay replay;
+    private int[] directions;
+    private GameSimulation simulation;
+    private GameState gameState;
+    private EventBus eventBus;
+    private int tick;
+
+    // rendering, only used when the replay is watched
+    private BufferedImage background;
+    private Graphics screen;
+    private UIRender uiRender;
+    private TimerWheel uiTimers = new TimerWheel();
+    private double pendingTicks;
+
+    // the window only shows the finished frame, the replay itself draws into background
+    private static class ReplayPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BufferedImage background;
+
+        ReplayPanel(BufferedImage background) {
+            this.background = background;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            g.drawImage(background, 0, 0, this);
+        }
+    }
+
+    public ReplayPlayer(Replay replay, MazeGroup nodes) {
+        if (nodes.getMazeHash() != replay.getMazeHash()) {
+            throw new IllegalArgumentException("Replay was recorded on a different maze");
+        }
+        this.replay = replay;
+        this.directions = replay.getDirections();
+
+        // score, lives and level as they were when recording started
+        this.gameState = new GameState();
+        gameState.loadState(new double[] {Constants.PLAYING, replay.getScore(), replay.getLives(), replay.getLevel()}, 0);
+        this.eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        this.simulation = new GameSimulation(nodes, gameState, eventBus, replay.getSeed(), replay.getGhostCount());
+        simulation.setFixedPoint(replay.isFixedPoint());
+    }
+
+    // play one recorded tick, returns false once the replay is over
+    public boolean step() {
+        if (isFinished()) {
+            return false;
+        }
+        simulation.getPacman().setInputDirection(directions[tick]);
+        simulation.step(TimerWheel.TICK);
+        eventBus.dispatch();
+        tick++;
+
+        // the player pressed space after every death, pacman went straight back to the start
+        if (gameState.inDeathAnimation()) {
+            gameState.continueAfterDeath();
+            simulation.resetPositions();
+        }
+        return true;
+    }
+
+    // play the rest of the replay without drawing anything
+    public void playToEnd() {
+        while (step()) {
+            // keep going
+        }
+    }
+
+    public boolean isFinished() {
+        return tick >= directions.length || gameState.getCurrentState() == Constants.GAME_OVER;
+    }
+
+    // watch the replay in a window, speed is how many recorded ticks go by per tick of real time
+    public void watch(double speed) {
+        background = new BufferedImage(Constants.SCREEN_WIDTH, Constants.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        screen = background.getGraphics();
+        uiRender = new UIRender(gameState, uiTimers);
+        ReplayPanel panel = new ReplayPanel(background);
+
+        JFrame frame = new JFrame("Pacman Replay");
+        frame.setSize(Constants.SCREEN_WIDTH, Constants.SCREEN_HEIGHT);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.add(panel);
+        frame.setResizable(false);
+        frame.setVisible(true);
+
+        int frameMillis = (int) Math.round(TimerWheel.TICK * 1000);
+        Timer timer = new Timer(frameMillis, e -> {
+            pendingTicks += speed;
+            while (pendingTicks >= 1) {
+                pendingTicks--;
+                step();
+            }
+            uiTimers.advance(TimerWheel.TICK);
+            uiRender.update(TimerWheel.TICK);
+            render();
+            panel.repaint();
+            if (isFinished()) {
+                ((Timer) e.getSource()).stop();
+                printResult();
+            }
+        });
+        timer.start();
+    }
+
+    private void render() {
+        screen.setColor(Color.BLACK);
+        screen.fillRect(0, 0, Constants.SCREEN_WIDTH, Constants.SCREEN_HEIGHT);
+        simulation.getNodes().render(screen);
+        simulation.getNodes().renderPellets(screen, simulation.getPelletState());
+        if (gameState.getCurrentState() != Constants.GAME_OVER) {
+            simulation.getPacman().render(screen);
+            simulation.getGhostAI().render(screen);
+        }
+        uiRender.render(screen);
+    }
+
+    private void printResult() {
+        System.out.println("Replay finished after " + tick + " of " + replay.getTicks() + " ticks: score "
+                + gameState.getScore() + ", lives " + gameState.getLives() + ", level " + gameState.getLevel());
+    }
+
+    // getters
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java ReplayPlayer <replay file> [speed]");
+            return;
+        }
+        Replay replay = Replay.read(Paths.get(args[0]));
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        ReplayPlayer player = new ReplayPlayer(replay, new MazeGroup(FileReader.readMazeFile("pacMaze1.txt")));
+
+        if (speed <= 0) {
+            long start = System.nanoTime();
+            player.playToEnd();
+            player.printResult();
+            System.out.printf("Played in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        } else {
+            SwingUtilities.invokeLater(() -> player.watch(speed));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+// this class records a level as it is played: call record() once per tick, before the tick is stepped
+// it keeps the key pacman is holding (getValidKey) and the seed the level was started with, save() writes the replay
+// out to the replays folder so it can be watched again or sent along with a bug report (see ReplayPlayer)
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class ReplayRecorder {
+    public static final String REPLAY_DIR = "replays";
+    public static final String EXTENSION = ".pmr";
+
+    private GameSimulation simulation;
+    private Replay replay;
+
+    // start recording a simulation that was just built with the given seed (and switched to fixed point, if it is)
+    public ReplayRecorder(GameSimulation simulation, long seed) {
+        this.simulation = simulation;
+        GameState gameState = simulation.getGameState();
+        this.replay = new Replay(seed, simulation.getNodes().getMazeHash(),
+                simulation.getGhostAI().getGhosts().size(),
+                gameState.getScore(), gameState.getLives(), gameState.getLevel());
+        replay.setFixedPoint(simulation.getPacman().isFixedPoint());
+    }
+
+    // the key pacman holds in the tick that is about to be stepped
+    public void record() {
+        replay.addTick(simulation.getPacman().getValidKey());
+    }
+
+    // write the replay to replays/replay-<time>.pmr, returns the file or null if there was nothing to save
+    public Path save() throws IOException {
+        if (replay.getTicks() == 0) {
+            return null;
+        }
+        Path file = Paths.get(REPLAY_DIR, "replay-" + System.currentTimeMillis() + EXTENSION);
+        replay.write(file);
+        return file;
+    }
+
+    public Replay getReplay() {
+        return replay;
+    }
+}
@@ -0,0 +1,50 @@
+// this class hands out the random numbers of a game, all of them worked out from one master seed
+// every ghost and every subsystem (the autopilot, ...) gets its own independent stream, found from the master seed,
+// the subsystem and its number alone, so a stream doesn't change when other streams are used more or less,
+// nothing is shared between threads, and the same master seed always plays the same game
+//
+// the streams are SplittableRandom, the ghosts keep theirs as a single long (the same splitmix64 generator)
+// so snapshots can save it, seedFor gives that long
+
+import java.util.SplittableRandom;
+
+public class RngService {
+    // subsystems that draw random numbers
+    public static final int GHOSTS = 0;
+    public static final int AUTOPILOT = 1;
+
+    private long masterSeed;
+
+    public RngService(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    // seed of stream number index of a subsystem
+    public long seedFor(int subsystem, int index) {
+        return mix64(mix64(masterSeed ^ mix64(subsystem + 1)) + index);
+    }
+
+    // a fresh generator for stream number index of a subsystem, it starts at the same place every time
+    public SplittableRandom stream(int subsystem, int index) {
+        return new SplittableRandom(seedFor(subsystem, index));
+    }
+
+    // the splitmix64 finalizer, spreads every bit of z over the whole result
+    public static long mix64(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // getters and setters
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    // start over from another master seed, streams asked for after this come from the new seed
+    public void setMasterSeed(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+}
@@ -0,0 +1,139 @@
+// this class tries out rollback play on one machine: two RollbackPeers talk over UDP on 127.0.0.1, one plays
+// pacman and one the ghost, both pressing random keys, with made up latency, jitter and packet loss on both links
+// both are run from one thread at 60 ticks a second. At the end it checks both sides ended on the same game
+// and prints how often and how far they rolled back, and how long playing MAX_ROLLBACK ticks again takes
+//
+// usage: java RollbackLoopback [ticks] [latency ms] [jitter ms] [loss 0-1]
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+
+public class RollbackLoopback {
+    private static final int PORT = 47000;
+    private static final long FRAME_NANOS = Math.round(TimerWheel.TICK * 1e9);
+
+    // a player pressing random keys (a new one every 1 to 60 ticks)
+    private static class RandomPlayer {
+        private SplittableRandom random;
+        private int key = Constants.STOP;
+        private int holdFor;
+
+        RandomPlayer(long seed) {
+            this.random = new SplittableRandom(seed);
+        }
+
+        int nextKey() {
+            if (holdFor-- <= 0) {
+                key = PacmanEnv.ACTIONS[random.nextInt(PacmanEnv.ACTIONS.length)];
+                holdFor = random.nextInt(1, 61);
+            }
+            return key;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 1200;
+        double latencyMs = args.length > 1 ? Double.parseDouble(args[1]) : 50;
+        double jitterMs = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+        double lossRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+
+        MazeGroup nodes = new MazeGroup(FileReader.readMazeFile("pacMaze1.txt"));
+        long seed = 2024;
+        RollbackPeer[] peers = {
+                new RollbackPeer(new RollbackSession(nodes, seed, RollbackSession.PACMAN), PORT,
+                        new InetSocketAddress("127.0.0.1", PORT + 1)),
+                new RollbackPeer(new RollbackSession(nodes, seed, RollbackSession.GHOST), PORT + 1,
+                        new InetSocketAddress("127.0.0.1", PORT))
+        };
+        RandomPlayer[] players = {new RandomPlayer(1), new RandomPlayer(2)};
+        for (int i = 0; i < peers.length; i++) {
+            peers[i].setNetworkConditions(latencyMs, jitterMs, lossRate, 100 + i);
+        }
+        System.out.printf("Playing %d ticks, latency %.0f ms, jitter %.0f ms, loss %.0f%%%n",
+                ticks, latencyMs, jitterMs, lossRate * 100);
+
+        // play, then keep the packets going until both sides know every key
+        long nextFrame = System.nanoTime();
+        long deadline = nextFrame + (long) ((ticks * TimerWheel.TICK + 10) * 1e9);
+        while (!bothDone(peers, ticks) && System.nanoTime() < deadline) {
+            for (int i = 0; i < peers.length; i++) {
+                RollbackPeer peer = peers[i];
+                peer.poll();
+                RollbackSession session = peer.getSession();
+                if (session.getCurrentTick() < ticks) {
+                    // the key is only taken once the tick is really played, a waiting side keeps it for the next frame
+                    if (session.canAdvance()) {
+                        session.advance(players[i].nextKey());
+                    } else {
+                        session.advance(Constants.STOP); // counts the stall, plays nothing
+                    }
+                }
+                peer.sendInputs();
+            }
+
+            nextFrame += FRAME_NANOS;
+            long sleep = nextFrame - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            }
+        }
+
+        for (int i = 0; i < peers.length; i++) {
+            RollbackPeer peer = peers[i];
+            RollbackSession session = peer.getSession();
+            System.out.printf("%s: %d ticks, %d rollbacks, deepest %d ticks, slowest %.2f ms, %d stalls, "
+                            + "%d packets sent, %d received, %d dropped%n",
+                    i == 0 ? "pacman" : "ghost ", session.getCurrentTick(), session.getRollbacks(),
+                    session.getMaxRollbackTicks(), session.getMaxRollbackNanos() / 1e6, session.getStalls(),
+                    peer.getPacketsSent(), peer.getPacketsReceived(), peer.getPacketsDropped());
+        }
+
+        RollbackSession a = peers[0].getSession();
+        RollbackSession b = peers[1].getSession();
+        boolean same = bothDone(peers, ticks) && a.getCurrentTick() == b.getCurrentTick()
+                && a.getHash(a.getCurrentTick() - 1) == b.getHash(b.getCurrentTick() - 1);
+        for (RollbackPeer peer : peers) {
+            if (peer.getDesyncTick() >= 0) {
+                System.out.println("Desync found at tick " + peer.getDesyncTick());
+                same = false;
+            }
+        }
+        System.out.println(same ? "Both sides ended on the same game" : "Sides did NOT end on the same game");
+
+        // worst case: a correction for the oldest tick we may have guessed, played again in full
+        int depth = Math.min(RollbackSession.MAX_ROLLBACK, a.getCurrentTick());
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 50; i++) {
+            long start = System.nanoTime();
+            a.resimulateFrom(a.getCurrentTick() - depth);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("Rolling back %d ticks takes %.3f ms, a frame is %.1f ms%n",
+                depth, best / 1e6, FRAME_NANOS / 1e6);
+
+        for (RollbackPeer peer : peers) {
+            peer.close();
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    // both sides played to the end (or the game ended) and have every key of the other side
+    private static boolean bothDone(RollbackPeer[] peers, int ticks) {
+        int end = -1;
+        for (RollbackPeer peer : peers) {
+            RollbackSession session = peer.getSession();
+            boolean played = session.getCurrentTick() >= ticks || session.isFinished();
+            if (!played || session.getConfirmedRemoteTick() < session.getCurrentTick() - 1) {
+                return false;
+            }
+            if (end >= 0 && end != session.getCurrentTick()) {
+                return false;
+            }
+            end = session.getCurrentTick();
+        }
+        return true;
+    }
+}
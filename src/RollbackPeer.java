@@ -0,0 +1,202 @@
+// this class connects a RollbackSession to the other player over UDP (a non-blocking DatagramChannel)
+// every packet carries all of this side's keys the other side hasn't acknowledged yet, so a lost packet is
+// covered by the next one and nothing is ever resent on its own. It also carries the hash of the newest tick
+// this side knows both keys of, the other side compares it with its own and notes the first tick they differ
+//
+// latency, jitter and packet loss can be added on the sending side, to try the game out over loopback
+//
+// packet: int MAGIC, int first tick, byte count, count keys (one byte each), int newest remote tick received,
+//         int hash tick (-1 if none), long hash
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+public class RollbackPeer {
+    public static final int MAGIC = 0x504D5242; // "PMRB"
+    public static final int MAX_INPUTS_PER_PACKET = 48;
+    private static final int PACKET_SIZE = 4 + 4 + 1 + MAX_INPUTS_PER_PACKET + 4 + 4 + 8;
+
+    private RollbackSession session;
+    private DatagramChannel channel;
+    private SocketAddress remote;
+    private ByteBuffer sendBuffer = ByteBuffer.allocate(PACKET_SIZE);
+    private ByteBuffer receiveBuffer = ByteBuffer.allocate(PACKET_SIZE);
+
+    private int remoteAck = -1;       // newest of our ticks the other side has the key of
+    private int desyncTick = -1;      // first tick the two sides had different games on, -1 while they agree
+
+    // made up network conditions for outgoing packets
+    private double latencyMs;
+    private double jitterMs;
+    private double lossRate;
+    private SplittableRandom random = new SplittableRandom(1);
+    private PriorityQueue<DelayedPacket> delayed = new PriorityQueue<>();
+    private long packetCount;
+
+    // stats
+    private long packetsSent;
+    private long packetsReceived;
+    private long packetsDropped;
+
+    // a packet waiting for its made up latency to pass
+    private static class DelayedPacket implements Comparable<DelayedPacket> {
+        long sendAt;
+        long order;
+        byte[] data;
+
+        DelayedPacket(long sendAt, long order, byte[] data) {
+            this.sendAt = sendAt;
+            this.order = order;
+            this.data = data;
+        }
+
+        @Override
+        public int compareTo(DelayedPacket other) {
+            int byTime = Long.compare(sendAt, other.sendAt);
+            return byTime != 0 ? byTime : Long.compare(order, other.order);
+        }
+    }
+
+    public RollbackPeer(RollbackSession session, int localPort, SocketAddress remote) throws IOException {
+        this.session = session;
+        this.remote = remote;
+        this.channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(localPort));
+        channel.connect(remote);
+        channel.configureBlocking(false);
+    }
+
+    // add made up latency (plus up to jitterMs more, so packets can arrive out of order) and loss to what we send
+    public void setNetworkConditions(double latencyMs, double jitterMs, double lossRate, long seed) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.lossRate = lossRate;
+        this.random = new SplittableRandom(seed);
+    }
+
+    // read every packet that arrived, roll back if a guess was wrong, and send the ones whose latency has passed
+    // call it once per frame, before the session advances
+    public void poll() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress from;
+            try {
+                from = channel.receive(receiveBuffer);
+            } catch (PortUnreachableException e) {
+                continue; // the other side isn't up yet
+            }
+            if (from == null) {
+                break;
+            }
+            receiveBuffer.flip();
+            read(receiveBuffer);
+        }
+        session.rollback();
+
+        long now = System.nanoTime();
+        while (!delayed.isEmpty() && delayed.peek().sendAt <= now) {
+            send(ByteBuffer.wrap(delayed.poll().data));
+        }
+    }
+
+    private void read(ByteBuffer packet) {
+        if (packet.remaining() < PACKET_SIZE - MAX_INPUTS_PER_PACKET || packet.getInt() != MAGIC) {
+            return; // not one of ours
+        }
+        packetsReceived++;
+        int firstTick = packet.getInt();
+        int count = packet.get() & 0xFF;
+        if (count > MAX_INPUTS_PER_PACKET || packet.remaining() < count + 16) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            session.addRemoteInput(firstTick + i, packet.get());
+        }
+        remoteAck = Math.max(remoteAck, packet.getInt());
+
+        // compare the other side's game with ours on a tick we both know all the keys of
+        int hashTick = packet.getInt();
+        long hash = packet.getLong();
+        if (desyncTick < 0 && session.hasConfirmedHash(hashTick) && session.getHash(hashTick) != hash) {
+            desyncTick = hashTick;
+        }
+    }
+
+    // send our keys the other side doesn't have yet, call it after the session advances
+    public void sendInputs() throws IOException {
+        int lastTick = session.getCurrentTick() - 1;
+        int firstTick = Math.max(remoteAck + 1, lastTick - MAX_INPUTS_PER_PACKET + 1);
+        int count = Math.max(0, lastTick - firstTick + 1);
+
+        sendBuffer.clear();
+        sendBuffer.putInt(MAGIC);
+        sendBuffer.putInt(firstTick);
+        sendBuffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            sendBuffer.put((byte) session.getLocalInput(firstTick + i));
+        }
+        sendBuffer.putInt(session.getConfirmedRemoteTick());
+        int hashTick = session.getConfirmedTick();
+        sendBuffer.putInt(hashTick);
+        sendBuffer.putLong(hashTick >= 0 ? session.getHash(hashTick) : 0);
+        sendBuffer.flip();
+
+        if (latencyMs <= 0 && jitterMs <= 0 && lossRate <= 0) {
+            send(sendBuffer);
+            return;
+        }
+        if (random.nextDouble() < lossRate) {
+            packetsDropped++;
+            return;
+        }
+        byte[] data = new byte[sendBuffer.remaining()];
+        sendBuffer.get(data);
+        double delayMs = latencyMs + random.nextDouble() * jitterMs;
+        delayed.add(new DelayedPacket(System.nanoTime() + (long) (delayMs * 1e6), packetCount++, data));
+    }
+
+    private void send(ByteBuffer packet) throws IOException {
+        try {
+            channel.write(packet);
+            packetsSent++;
+        } catch (PortUnreachableException e) {
+            packetsDropped++; // the other side isn't up yet, the next packet carries the same keys
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // getters
+
+    public RollbackSession getSession() {
+        return session;
+    }
+
+    public SocketAddress getRemote() {
+        return remote;
+    }
+
+    public int getDesyncTick() {
+        return desyncTick;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+}
@@ -0,0 +1,214 @@
+// this class runs one side of a head to head game with rollback: one player is pacman, the other steers a ghost
+// both sides run the same simulation. Each tick this side steps the game straight away with its own key and a
+// guess for the other player's key (the last one it heard). When the real key for a tick arrives and it isn't
+// what was guessed, the game goes back to the snapshot taken before that tick and plays the ticks since then
+// again with the right keys. Nobody waits for the network unless the other side falls MAX_ROLLBACK ticks behind
+//
+// it knows nothing about sockets: keys come in through addRemoteInput and go out through getLocalInput, see
+// RollbackPeer for the UDP side. Deaths go straight on (pacman back to the start) like in ReplayPlayer,
+// there is nobody to press space
+
+public class RollbackSession {
+    // who this side plays
+    public static final int PACMAN = 0;
+    public static final int GHOST = 1;
+
+    // how far this side may run ahead of the last key it heard from the other one
+    public static final int MAX_ROLLBACK = 16;
+
+    // ticks of keys, snapshots and hashes kept, a power of two so a tick's place is tick & RING_MASK
+    public static final int RING_SIZE = 64;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    // the ghost the other player steers
+    public static final int PLAYER_GHOST = 0;
+
+    private int role;
+    private GameSimulation simulation;
+    private GameState gameState;
+    private EventBus eventBus;
+
+    // per tick, at tick & RING_MASK
+    private int[] localInputs = new int[RING_SIZE];
+    private int[] remoteInputs = new int[RING_SIZE];   // the real key once confirmed, else the guess that was used
+    private GameSnapshot[] snapshots = new GameSnapshot[RING_SIZE]; // the game before the tick
+    private long[] hashes = new long[RING_SIZE];       // the game after the tick
+
+    private int currentTick;          // next tick to play
+    private int confirmedRemoteTick = -1; // every remote key up to here has arrived
+    private int lastRemoteInput = Constants.STOP;
+    private int rollbackFrom = Integer.MAX_VALUE; // earliest tick that was played with a wrong guess
+
+    // stats
+    private int rollbacks;
+    private int maxRollbackTicks;
+    private long maxRollbackNanos;
+    private int stalls;
+
+    public RollbackSession(MazeGroup nodes, long seed, int role) {
+        this.role = role;
+        this.gameState = new GameState();
+        gameState.startGame();
+        this.eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        this.simulation = new GameSimulation(nodes, gameState, eventBus, seed);
+        // both sides have to come out bit for bit the same, whatever machine they run on
+        simulation.setFixedPoint(true);
+        simulation.getGhostAI().getGhosts().get(PLAYER_GHOST).setPlayerControlled(true);
+
+        for (int i = 0; i < RING_SIZE; i++) {
+            snapshots[i] = GameSnapshot.capture(simulation);
+        }
+    }
+
+    // false while this side is MAX_ROLLBACK ticks ahead of the other one, it has to wait for its keys
+    public boolean canAdvance() {
+        return currentTick - confirmedRemoteTick <= MAX_ROLLBACK && !isFinished();
+    }
+
+    // play the next tick with the key this side holds, returns false (and plays nothing) if it has to wait
+    public boolean advance(int localInput) {
+        if (!canAdvance()) {
+            stalls++;
+            return false;
+        }
+        localInputs[currentTick & RING_MASK] = localInput;
+        if (currentTick > confirmedRemoteTick) {
+            remoteInputs[currentTick & RING_MASK] = lastRemoteInput; // the other player still holds their last key
+        }
+        simulate(currentTick);
+        currentTick++;
+        return true;
+    }
+
+    // the other player's key for a tick, keys arriving twice or too late to matter are ignored
+    // they have to come in order, a key after a missing one waits until the packet with the missing one is resent
+    public void addRemoteInput(int tick, int input) {
+        if (tick != confirmedRemoteTick + 1) {
+            return;
+        }
+        confirmedRemoteTick = tick;
+        lastRemoteInput = input;
+
+        if (tick < currentTick) {
+            // that tick was already played with a guess
+            if (remoteInputs[tick & RING_MASK] != input) {
+                rollbackFrom = Math.min(rollbackFrom, tick);
+            }
+        }
+        remoteInputs[tick & RING_MASK] = input;
+    }
+
+    // play again from the first tick that was guessed wrong, call it after the keys of a packet are added
+    public void rollback() {
+        if (rollbackFrom >= currentTick) {
+            rollbackFrom = Integer.MAX_VALUE;
+            return;
+        }
+        long start = System.nanoTime();
+        int ticks = resimulateFrom(rollbackFrom);
+        long nanos = System.nanoTime() - start;
+
+        rollbacks++;
+        maxRollbackTicks = Math.max(maxRollbackTicks, ticks);
+        maxRollbackNanos = Math.max(maxRollbackNanos, nanos);
+        rollbackFrom = Integer.MAX_VALUE;
+    }
+
+    // put the game back to before the given tick and play up to the current tick again, returns the ticks played
+    public int resimulateFrom(int tick) {
+        if (tick < 0 || tick < currentTick - RING_SIZE + 1) {
+            throw new IllegalArgumentException("Tick " + tick + " is too far back to roll back to");
+        }
+        snapshots[tick & RING_MASK].restore(simulation);
+
+        // ticks after the ones we know the remote keys of are guessed again from the newest key we know
+        for (int t = tick; t < currentTick; t++) {
+            if (t > confirmedRemoteTick) {
+                remoteInputs[t & RING_MASK] = lastRemoteInput;
+            }
+            simulate(t);
+        }
+        return currentTick - tick;
+    }
+
+    private void simulate(int tick) {
+        int slot = tick & RING_MASK;
+        snapshots[slot].captureFrom(simulation);
+
+        int pacmanInput = role == PACMAN ? localInputs[slot] : remoteInputs[slot];
+        int ghostInput = role == GHOST ? localInputs[slot] : remoteInputs[slot];
+        simulation.getPacman().setInputDirection(pacmanInput);
+        simulation.getGhostAI().getGhosts().get(PLAYER_GHOST).setInputDirection(ghostInput);
+
+        simulation.step(TimerWheel.TICK);
+        eventBus.dispatch();
+        if (gameState.inDeathAnimation()) {
+            gameState.continueAfterDeath();
+            simulation.resetPositions();
+        }
+        hashes[slot] = simulation.getStateHash();
+    }
+
+    // newest tick both sides have the real keys for, its hash won't change any more (-1 if there is none yet)
+    public int getConfirmedTick() {
+        return Math.min(confirmedRemoteTick, currentTick - 1);
+    }
+
+    // hash of the game after a tick, only for ticks still in the ring
+    public long getHash(int tick) {
+        if (tick < 0 || tick >= currentTick || tick < currentTick - RING_SIZE) {
+            throw new IllegalArgumentException("No hash for tick " + tick);
+        }
+        return hashes[tick & RING_MASK];
+    }
+
+    // true if the hash of a confirmed tick is still kept here, so the other side's hash can be checked against it
+    public boolean hasConfirmedHash(int tick) {
+        return tick >= 0 && tick <= getConfirmedTick() && tick >= currentTick - RING_SIZE;
+    }
+
+    // this side's key for a tick it played
+    public int getLocalInput(int tick) {
+        return localInputs[tick & RING_MASK];
+    }
+
+    // the game is over: pacman ate every pellet or lost his last life
+    public boolean isFinished() {
+        return gameState.getCurrentState() == Constants.GAME_OVER || simulation.getPelletsLeft() == 0;
+    }
+
+    // getters
+
+    public int getRole() {
+        return role;
+    }
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    public int getCurrentTick() {
+        return currentTick;
+    }
+
+    public int getConfirmedRemoteTick() {
+        return confirmedRemoteTick;
+    }
+
+    public int getRollbacks() {
+        return rollbacks;
+    }
+
+    public int getMaxRollbackTicks() {
+        return maxRollbackTicks;
+    }
+
+    public long getMaxRollbackNanos() {
+        return maxRollbackNanos;
+    }
+
+    public int getStalls() {
+        return stalls;
+    }
+}
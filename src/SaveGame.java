@@ -0,0 +1,176 @@
+// this class keeps the game being played in a save file, so it can be picked up again after the app restarts
+// save() takes a GameSnapshot on the game thread (a few arrays, the pellet bits aren't even copied) and returns,
+// the save thread encodes it and writes it through a FileChannel to a new file that is then renamed over the old
+// one, so the save on disk is always a whole one. Saves that come in while one is being written are folded into
+// one: only the newest gets written
+//
+// file layout, all numbers big-endian:
+//   header (28 bytes): magic, version, long maze hash, ghost count, body length, CRC32C of the body
+//   body: the snapshot (see GameSnapshot.write), its size grows with the pellets and the ghosts
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+public class SaveGame {
+    public static final Path DEFAULT_FILE = Paths.get("savegame.pms");
+
+    private static final int MAGIC = 0x504D5347; // "PMSG"
+    // bump when GameSnapshot.write or a saveState layout changes, older saves are then ignored
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private Path file;
+    private Path temp;
+    private ExecutorService writer;
+    private AtomicReference<GameSnapshot> pending = new AtomicReference<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(1024); // only used by the save thread
+    private CRC32C crc = new CRC32C();                  // only used by the save thread
+    private volatile int saves;
+
+    public SaveGame(Path file) {
+        this.file = file;
+        this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "savegame");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // save the game as it is now, never waits for the disk
+    public void save(GameSimulation simulation) {
+        if (pending.getAndSet(GameSnapshot.capture(simulation)) == null) {
+            writer.execute(this::writePending);
+        }
+    }
+
+    // the game is over, there is nothing to resume any more (saves still waiting are dropped)
+    public void delete() {
+        pending.set(null);
+        writer.execute(() -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error deleting save: " + e.getMessage());
+            }
+        });
+    }
+
+    // write out what is waiting and stop the save thread
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void writePending() {
+        GameSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return; // written by the task before this one
+        }
+        try {
+            write(snapshot);
+            saves++;
+        } catch (IOException e) {
+            System.err.println("Error saving game: " + e.getMessage());
+        }
+    }
+
+    private void write(GameSnapshot snapshot) throws IOException {
+        int size = HEADER_SIZE + snapshot.getMaxBytes();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.clear().position(HEADER_SIZE);
+        snapshot.write(buffer);
+        int bodyLength = buffer.position() - HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), HEADER_SIZE, bodyLength);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, snapshot.getNodes().getMazeHash());
+        buffer.putInt(16, snapshot.getGhostCount());
+        buffer.putInt(20, bodyLength);
+        buffer.putInt(24, (int) crc.getValue());
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // put the saved game into simulation, a game just built on the maze it was saved on
+    // returns false if there is no save, throws if there is one that can't be used
+    public boolean load(GameSimulation simulation) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > HEADER_SIZE + (1 << 24)) {
+                throw new IOException(file + " is not a saved game");
+            }
+            data = ByteBuffer.allocate((int) length);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading
+            }
+            data.flip();
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a saved game");
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unknown save version " + data.getInt(4));
+        }
+        if (data.getLong(8) != simulation.getNodes().getMazeHash()
+                || data.getInt(16) != simulation.getGhostAI().getGhosts().size()) {
+            throw new IOException("Save is for a different maze");
+        }
+        int bodyLength = data.getInt(20);
+        if (bodyLength != data.remaining() - HEADER_SIZE) {
+            throw new IOException("Save is cut short");
+        }
+        CRC32C check = new CRC32C();
+        check.update(data.array(), HEADER_SIZE, bodyLength);
+        if ((int) check.getValue() != data.getInt(24)) {
+            throw new IOException("Save is damaged");
+        }
+
+        GameSnapshot snapshot = GameSnapshot.capture(simulation);
+        try {
+            snapshot.read(data.position(HEADER_SIZE));
+        } catch (RuntimeException e) {
+            throw new IOException("Save is damaged: " + e.getMessage());
+        }
+        snapshot.restore(simulation);
+        return true;
+    }
+
+    // getters
+
+    public Path getFile() {
+        return file;
+    }
+
+    // saves written since the app started
+    public int getSaves() {
+        return saves;
+    }
+}
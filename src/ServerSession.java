@@ -0,0 +1,289 @@
+// this class is one game hosted by GameServer: its own simulation, ghosts and game state, and the client
+// connection that plays it. The I/O loop that owns the connection hands in keys (only the newest one counts),
+// the tick shard that owns the game steps it 60 times a second and sends the client the state after every tick
+//
+// the channel is either non-blocking and owned by a Selector (GameServer), or blocking without a SelectionKey
+// (ThreadedGameServer), then writeLoop() on a thread of its own does the writing. Either way the tick never waits
+// for the client: a send only queues the message, and skips it if the client is too far behind
+//
+// the client gets either the full state after every tick or, if it asked for them, deltas (see DeltaEncoder)
+// spectators watch through a SpectatorFeed, made when the first one comes
+// deaths go straight on and a finished game (cleared or game over) starts over, there is nobody to press space
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ServerSession {
+    // room for a few state messages, if the client reads slower than that the newest states are skipped
+    private static final int OUT_BUFFER_SIZE = 4096;
+
+    private int id;
+    private long seed;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private GameSimulation simulation;
+    private GameState gameState;
+    private EventBus eventBus;
+    private int tick;
+
+    // newest key from the client, written by the I/O loop and read by the tick shard
+    private volatile int input = Constants.STOP;
+    private volatile boolean closed;
+
+    // messages waiting to go out, shared by the tick shard (writing states) and the I/O loop (flushing)
+    // (a lock rather than synchronized, a virtual thread blocked in a write inside synchronized would hold on
+    // to its carrier thread)
+    private ByteBuffer out = ByteBuffer.allocateDirect(OUT_BUFFER_SIZE);
+    private ReentrantLock outLock = new ReentrantLock();
+    private Condition outReady = outLock.newCondition(); // a blocking channel's writer waits on it for messages
+    private ByteBuffer writing; // what the writer of a blocking channel took out of out, written without the lock
+    private ByteBuffer message = ByteBuffer.allocate(GameServer.MAX_MESSAGE);
+    private long statesSkipped;
+    private DeltaEncoder deltaEncoder; // null when the client gets full states
+    private volatile SpectatorFeed feed;
+    private Leaderboard leaderboard; // null if finished games aren't kept
+
+    public ServerSession(int id, long seed, MazeGroup nodes, SocketChannel channel, SelectionKey key, boolean deltas) {
+        this.id = id;
+        this.seed = seed;
+        this.channel = channel;
+        this.key = key;
+        this.gameState = new GameState();
+        gameState.startGame();
+        this.eventBus = new EventBus();
+        eventBus.subscribe(gameState);
+        this.simulation = new GameSimulation(nodes, gameState, eventBus, seed);
+        // the game a client sees is the same on every server, so a recorded session can be checked anywhere
+        simulation.setFixedPoint(true);
+        if (deltas) {
+            this.deltaEncoder = new DeltaEncoder(nodes.getPellets().size(),
+                    simulation.getGhostAI().getGhosts().size() + 1);
+        }
+    }
+
+    // play one tick with the newest key and send the state, called by the tick shard
+    public void tick() {
+        simulation.getPacman().setInputDirection(input);
+        simulation.step(TimerWheel.TICK);
+        eventBus.dispatch();
+        tick++;
+
+        if (gameState.inDeathAnimation()) {
+            gameState.continueAfterDeath();
+            simulation.resetPositions();
+        } else if (gameState.getCurrentState() == Constants.GAME_OVER || simulation.getPelletsLeft() == 0) {
+            if (leaderboard != null) {
+                leaderboard.submit("game " + id, gameState.getScore(), gameState.getLevel());
+            }
+            seed++;
+            simulation.reset(seed);
+            eventBus.clear();
+        }
+
+        message.clear();
+        if (deltaEncoder != null) {
+            deltaEncoder.capture(simulation, tick);
+            deltaEncoder.encode(message);
+        } else {
+            writeState(message);
+        }
+        message.flip();
+        send(message);
+
+        SpectatorFeed feed = this.feed;
+        if (feed != null) {
+            feed.publish(simulation, tick);
+        }
+    }
+
+    // the full state message: everything a client needs to draw the game
+    private void writeState(ByteBuffer buffer) {
+        buffer.put(GameServer.STATE);
+        buffer.putInt(tick);
+        buffer.putInt(gameState.getScore());
+        buffer.put((byte) gameState.getLives());
+        buffer.put((byte) gameState.getCurrentState());
+        buffer.putShort((short) simulation.getPelletsLeft());
+
+        Pacman pacman = simulation.getPacman();
+        buffer.putShort((short) Math.round(pacman.getPosition().getX()));
+        buffer.putShort((short) Math.round(pacman.getPosition().getY()));
+        buffer.put((byte) pacman.getCurrentDirection());
+
+        for (Ghost ghost : simulation.getGhostAI().getGhosts()) {
+            buffer.putShort((short) Math.round(ghost.getPosition().getX()));
+            buffer.putShort((short) Math.round(ghost.getPosition().getY()));
+            buffer.put((byte) ghost.getBehavior());
+        }
+
+        PelletState pellets = simulation.getPelletState();
+        for (int i = 0; i < pellets.getTotal(); i += 8) {
+            int bits = 0;
+            for (int j = 0; j < 8 && i + j < pellets.getTotal(); j++) {
+                if (pellets.isEaten(i + j)) {
+                    bits |= 1 << j;
+                }
+            }
+            buffer.put((byte) bits);
+        }
+    }
+
+    // queue a message (length prefixed) and write out as much as the socket takes right now
+    public void send(ByteBuffer payload) {
+        outLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (out.remaining() < 2 + payload.remaining()) {
+                statesSkipped++; // the client is behind, it gets a newer state later
+                return;
+            }
+            out.putShort((short) payload.remaining());
+            out.put(payload);
+            if (key == null) {
+                outReady.signal(); // the writer thread writes it
+            } else {
+                flush();
+            }
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    // write out what is waiting, if the socket is full the I/O loop is asked to finish the job when it can
+    public void flush() {
+        if (key == null) {
+            return; // writeLoop() writes to a blocking channel
+        }
+        outLock.lock();
+        try {
+            out.flip();
+            channel.write(out);
+            boolean pending = out.hasRemaining();
+            out.compact();
+
+            int ops = pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.isValid() && key.interestOps() != ops) {
+                key.interestOps(ops);
+                if (pending) {
+                    key.selector().wakeup();
+                }
+            }
+        } catch (IOException e) {
+            close();
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    // for a blocking channel: write what send() queued until the session is closed, on a thread of its own
+    // the lock is only held to take the messages out, so a client that reads slowly holds up nothing but this
+    // thread, meanwhile out fills up and send() skips states
+    public void writeLoop() {
+        writing = ByteBuffer.allocateDirect(OUT_BUFFER_SIZE);
+        try {
+            while (true) {
+                outLock.lock();
+                try {
+                    while (out.position() == 0 && !closed) {
+                        outReady.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    out.flip();
+                    writing.clear();
+                    writing.put(out);
+                    out.clear();
+                } finally {
+                    outLock.unlock();
+                }
+
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+
+    // the client decoded the delta of this tick, called by the I/O loop
+    public void ack(int tick) {
+        if (deltaEncoder != null) {
+            deltaEncoder.ack(tick);
+        }
+    }
+
+    // finished games go on this board
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    // the newest key the client holds, called by the I/O loop
+    public void setInput(int input) {
+        this.input = input;
+    }
+
+    // the feed for spectators of this game, called by the I/O loops
+    public synchronized SpectatorFeed getFeed() {
+        if (feed == null) {
+            feed = new SpectatorFeed(simulation.getPelletState().getTotal(),
+                    simulation.getGhostAI().getGhosts().size() + 1);
+            if (closed) {
+                feed.close();
+            }
+        }
+        return feed;
+    }
+
+    public void close() {
+        closed = true;
+        outLock.lock();
+        try {
+            outReady.signal(); // a blocking channel's writer stops
+        } finally {
+            outLock.unlock();
+        }
+        SpectatorFeed feed = this.feed;
+        if (feed != null) {
+            feed.close();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    // getters
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public long getStatesSkipped() {
+        return statesSkipped;
+    }
+}
@@ -3,7 +3,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Random;
 
 public class SoundManager {
 
@@ -49,6 +48,16 @@ public class SoundManager {
         }
     }
 
+    // play the sounds for a tick's events, several pellets eaten in the same tick only play once
+    public static void onEvents(EventBus events) {
+        if (events.countOf(Constants.PELLET_EATEN) > 0) {
+            playSound("sounds/eat_pellet.wav");
+        }
+        if (events.countOf(Constants.PACMAN_DIED) > 0) {
+            playSound("sounds/death.wav");
+        }
+    }
+
     public static void playSound(String soundFilePath) {
         try {
             File soundFile = new File(soundFilePath);
@@ -0,0 +1,98 @@
+// this class is a uniform grid over the maze with one bucket per tile, used to find the things near a point
+// without testing every one of them: entities are numbered 0..n-1 and put in the bucket of the tile they are on,
+// a radius query only looks at the buckets the circle can touch
+//
+// the buckets are linked lists kept in int arrays (first entity per tile, next entity per entity)
+// so rebuilding every tick and querying never allocates anything
+
+import java.util.Arrays;
+
+public class SpatialHash {
+    private static final int EMPTY = -1;
+
+    private int cols;
+    private int rows;
+    private int[] first;   // first entity in each tile, EMPTY if none
+    private int[] next;    // next entity in the same tile
+    private double[] xs;   // where each entity was when it was added
+    private double[] ys;
+    private int size;
+
+    public SpatialHash(int cols, int rows, int capacity) {
+        this.cols = cols;
+        this.rows = rows;
+        this.first = new int[cols * rows];
+        this.next = new int[capacity];
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        Arrays.fill(first, EMPTY);
+    }
+
+    // empty every bucket
+    public void clear() {
+        Arrays.fill(first, EMPTY);
+        size = 0;
+    }
+
+    // add the next entity (its number is the number of entities added before it) at pixel position x, y
+    public int add(double x, double y) {
+        if (size == next.length) {
+            int capacity = Math.max(1, size * 2);
+            next = Arrays.copyOf(next, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        int id = size++;
+        int cell = cell(x, y);
+        xs[id] = x;
+        ys[id] = y;
+        next[id] = first[cell];
+        first[cell] = id;
+        return id;
+    }
+
+    // put the entities within radius of x, y (strictly closer than radius) into result, returns how many there are
+    // result has to be able to hold every entity
+    public int query(double x, double y, double radius, int[] result) {
+        int count = 0;
+        double radiusSquared = radius * radius;
+
+        int minCol = clampCol((int) Math.floor((x - radius) / Constants.TILE_WIDTH));
+        int maxCol = clampCol((int) Math.floor((x + radius) / Constants.TILE_WIDTH));
+        int minRow = clampRow((int) Math.floor((y - radius) / Constants.TILE_HEIGHT));
+        int maxRow = clampRow((int) Math.floor((y + radius) / Constants.TILE_HEIGHT));
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int id = first[row * cols + col]; id != EMPTY; id = next[id]) {
+                    double dx = xs[id] - x;
+                    double dy = ys[id] - y;
+                    if (dx * dx + dy * dy < radiusSquared) {
+                        result[count++] = id;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // number of entities added since the last clear
+    public int size() {
+        return size;
+    }
+
+    // tile of a pixel position, things off the edge of the maze (the tunnel) go in the nearest edge tile
+    private int cell(double x, double y) {
+        int col = clampCol((int) Math.floor(x / Constants.TILE_WIDTH));
+        int row = clampRow((int) Math.floor(y / Constants.TILE_HEIGHT));
+        return row * cols + col;
+    }
+
+    private int clampCol(int col) {
+        return Math.max(0, Math.min(cols - 1, col));
+    }
+
+    private int clampRow(int row) {
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+}
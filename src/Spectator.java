@@ -0,0 +1,165 @@
+// this class is one client watching a game through its SpectatorFeed, it belongs to one I/O loop of GameServer
+// the I/O loop pumps it when the tick shards published new frames: the frames the spectator hasn't had yet go out
+// in one gathering write, straight from the shared buffers
+//
+// a spectator that can't keep up never holds up the game, it falls behind in the feed's ring instead:
+//   once lapped it is downgraded to keyframes only (one every DeltaEncoder.KEYFRAME_INTERVAL ticks) and after
+//   RECOVER_KEYFRAMES of those went out in time it gets every frame again, starting at the next keyframe
+//   if its socket takes nothing at all for DROP_FRAMES frames, it is dropped
+// a new spectator waits for a keyframe (the feed makes the next frame one) and then gets every frame
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+public class Spectator {
+    // frames in one gathering write
+    private static final int MAX_GATHER = 64;
+    // keyframes written in time before a downgraded spectator gets every frame again
+    private static final int RECOVER_KEYFRAMES = 3;
+    // frames published without the socket taking a byte before a spectator is dropped (5 s)
+    private static final int DROP_FRAMES = 300;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SpectatorFeed feed;
+    private long nextFrame;
+    private long lastProgress; // newest frame when the socket last took something
+    private boolean waitingForKeyframe = true;
+    private boolean keyframesOnly;
+    private int keyframesInTime;
+    private boolean closed;
+
+    // the frames of the last write the socket hasn't taken all of
+    private ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private int gatherStart;
+    private int gatherEnd;
+
+    // stats
+    private long framesSent;
+    private int downgrades;
+
+    public Spectator(SocketChannel channel, SelectionKey key, SpectatorFeed feed) {
+        this.channel = channel;
+        this.key = key;
+        this.feed = feed;
+        this.nextFrame = feed.getNewest() + 1;
+        this.lastProgress = feed.getNewest();
+        feed.addSpectator();
+    }
+
+    // send what's new in the feed, called by the I/O loop after frames were published or the socket has room
+    public void pump() {
+        if (closed) {
+            return;
+        }
+        if (feed.isClosed()) {
+            close();
+            return;
+        }
+        try {
+            boolean written = writeGather();
+            long newest = feed.getNewest();
+            if (newest - lastProgress > DROP_FRAMES) {
+                close();
+                return;
+            }
+            if (newest - nextFrame >= SpectatorFeed.RING_SIZE) {
+                // what we haven't sent yet is gone from the ring, start over from the newest frame
+                fellBehind();
+                nextFrame = newest + 1;
+            }
+            if (!written) {
+                return; // the socket is still full, whatever comes now waits in the ring
+            }
+
+            gatherStart = 0;
+            gatherEnd = 0;
+            while (nextFrame <= newest && gatherEnd < MAX_GATHER) {
+                SpectatorFeed.Frame frame = feed.get(nextFrame);
+                if (frame == null) {
+                    // lapped while we were reading the ring
+                    fellBehind();
+                    nextFrame = feed.getNewest() + 1;
+                    break;
+                }
+                nextFrame++;
+
+                if (frame.isKeyframe()) {
+                    if (keyframesOnly && ++keyframesInTime >= RECOVER_KEYFRAMES) {
+                        keyframesOnly = false; // caught up, every frame from here on
+                    }
+                    waitingForKeyframe = false;
+                } else if (waitingForKeyframe || keyframesOnly) {
+                    continue;
+                }
+                gather[gatherEnd++] = frame.view();
+                framesSent++;
+            }
+            writeGather();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // lapped in the ring: go down to keyframes only (again)
+    private void fellBehind() {
+        if (!keyframesOnly) {
+            downgrades++;
+        }
+        keyframesOnly = true;
+        keyframesInTime = 0;
+        waitingForKeyframe = true;
+        feed.requestKeyframe();
+    }
+
+    // write what is left of the gathered frames, false if the socket didn't take all of it
+    private boolean writeGather() throws IOException {
+        if (gatherStart < gatherEnd) {
+            if (channel.write(gather, gatherStart, gatherEnd - gatherStart) > 0) {
+                lastProgress = feed.getNewest();
+            }
+            while (gatherStart < gatherEnd && !gather[gatherStart].hasRemaining()) {
+                gather[gatherStart++] = null;
+            }
+        }
+        boolean done = gatherStart == gatherEnd;
+        if (done) {
+            lastProgress = feed.getNewest();
+        }
+        int ops = done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (key.isValid() && key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+        return done;
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        feed.removeSpectator();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    // getters
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public int getDowngrades() {
+        return downgrades;
+    }
+}
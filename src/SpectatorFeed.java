@@ -0,0 +1,114 @@
+// this class is the stream of one game for its spectators (see Spectator)
+// after every tick the game's state is encoded once, as a delta on the tick before it (or a keyframe), into a
+// read-only buffer that all spectators share. The buffers go into a ring the I/O loops read from, so publishing
+// a tick costs the same whether nobody or thousands are watching, the tick thread never touches a spectator
+//
+// keyframes come every DeltaEncoder.KEYFRAME_INTERVAL ticks, and on the next tick when a spectator asks for one
+// (it just came in, or fell behind and has to start over)
+
+import java.nio.ByteBuffer;
+
+public class SpectatorFeed {
+    // ticks kept for spectators that are behind, a power of two
+    public static final int RING_SIZE = 64;
+
+    // one encoded tick, never changed after it is published
+    public static class Frame {
+        // final, so an I/O thread that reads a frame out of the ring always sees it whole
+        private final long sequence;
+        private final boolean keyframe;
+        private final ByteBuffer data; // length prefixed message, read-only
+
+        Frame(long sequence, boolean keyframe, ByteBuffer data) {
+            this.sequence = sequence;
+            this.keyframe = keyframe;
+            this.data = data;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public boolean isKeyframe() {
+            return keyframe;
+        }
+
+        // a view of the message for one spectator to write from, the shared bytes are not copied
+        public ByteBuffer view() {
+            return data.duplicate();
+        }
+    }
+
+    private DeltaEncoder encoder;
+    private ByteBuffer message = ByteBuffer.allocate(GameServer.MAX_MESSAGE);
+    private Frame[] frames = new Frame[RING_SIZE];
+    private volatile long newest = -1;
+    private volatile int spectators;
+    private volatile boolean keyframeWanted;
+    private volatile boolean closed;
+
+    public SpectatorFeed(int pelletCount, int entityCount) {
+        this.encoder = new DeltaEncoder(pelletCount, entityCount);
+    }
+
+    // encode the game after a tick and publish it, called by the tick thread of the game
+    public void publish(GameSimulation simulation, int tick) {
+        if (spectators == 0) {
+            return;
+        }
+        if (keyframeWanted) {
+            keyframeWanted = false;
+            encoder.requestKeyframe();
+        }
+        encoder.capture(simulation, tick);
+        message.clear();
+        encoder.encode(message);
+        encoder.ack(tick); // every spectator gets every frame (or starts over at a keyframe), so chain the deltas
+        message.flip();
+
+        ByteBuffer data = ByteBuffer.allocate(2 + message.remaining());
+        data.putShort((short) message.remaining()).put(message).flip();
+        long sequence = newest + 1;
+        frames[(int) (sequence & (RING_SIZE - 1))] = new Frame(sequence, encoder.wasKeyframe(), data.asReadOnlyBuffer());
+        newest = sequence; // written after the frame, a reader that sees the sequence sees its frame
+    }
+
+    // the frame with this sequence number, or null if it isn't in the ring (any more)
+    public Frame get(long sequence) {
+        Frame frame = frames[(int) (sequence & (RING_SIZE - 1))];
+        return frame != null && frame.sequence == sequence ? frame : null;
+    }
+
+    // a spectator needs a keyframe to start from
+    public void requestKeyframe() {
+        keyframeWanted = true;
+    }
+
+    public synchronized void addSpectator() {
+        spectators++;
+        keyframeWanted = true;
+    }
+
+    public synchronized void removeSpectator() {
+        spectators--;
+    }
+
+    // the game is over for good, spectators are sent away
+    public void close() {
+        closed = true;
+    }
+
+    // getters
+
+    public long getNewest() {
+        return newest;
+    }
+
+    public int getSpectators() {
+        return spectators;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
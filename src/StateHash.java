@@ -0,0 +1,73 @@
+// this class boils the whole state of a GameSimulation down to one 64 bit number, so two runs can be compared
+// tick by tick: the same game played the same way must give the same hash on every tick
+//
+// it is a Zobrist hash: every piece of state (slot) with every value it can have gets its own random key, and the
+// hash is the xor of the keys of the current values. Changing one value only xors out its old key and xors in the new
+// one, so the eaten pellets are kept up to date by PelletState as they are eaten, and of the rest (stats, pacman, the
+// ghosts, the timers, as saveState writes them) only the slots that changed since the last call are touched
+// positions are hashed by their exact bits, so even a last-bit difference between two runs shows up
+// the timers are hashed as the ticks they have left, not by the tick the wheel is on, so a game that was
+// rolled back to a snapshot and played forward again hashes the same as one that never went back
+
+public class StateHash {
+    // where the random streams of the keys start, so slot keys and pellet keys never line up
+    private static final long SLOT_SALT = 0x5EED5107L;
+    private static final long PELLET_SALT = 0x9E11E7L;
+
+    private GameSimulation simulation;
+    private double[] state;
+    private long[] values;      // bits of every slot as they were last hashed
+    private long hash;          // xor of the slot keys, the pellets are added on top
+
+    public StateHash(GameSimulation simulation) {
+        this.simulation = simulation;
+        int ghostCount = simulation.getGhostAI().getGhosts().size();
+        this.state = new double[GameState.STATE_SIZE + Pacman.STATE_SIZE
+                + simulation.getGhostAI().getStateSize() + ghostCount * Ghost.STATE_SIZE];
+
+        // extra slots at the end for the ghosts' random states
+        this.values = new long[state.length + ghostCount];
+        for (int slot = 0; slot < values.length; slot++) {
+            hash ^= key(slot, 0);
+        }
+    }
+
+    // hash of the simulation as it is right now, call it as often as you like (every tick is fine)
+    public long compute() {
+        int offset = simulation.getGameState().saveState(state, 0);
+        offset = simulation.getPacman().saveState(state, offset);
+        GhostAI ghostAI = simulation.getGhostAI();
+        offset = ghostAI.saveState(state, offset);
+        for (Ghost ghost : ghostAI.getGhosts()) {
+            offset = ghost.saveState(state, offset);
+        }
+
+        for (int slot = 0; slot < state.length; slot++) {
+            update(slot, Double.doubleToLongBits(state[slot]));
+        }
+        int slot = state.length;
+        for (Ghost ghost : ghostAI.getGhosts()) {
+            update(slot++, ghost.getRandomState());
+        }
+
+        return hash ^ simulation.getPelletState().getHash();
+    }
+
+    private void update(int slot, long value) {
+        if (values[slot] != value) {
+            hash ^= key(slot, values[slot]) ^ key(slot, value);
+            values[slot] = value;
+        }
+    }
+
+    // the random key of one value of a slot, worked out when needed instead of kept in a table
+    // (positions can take any value, so a table could never hold them all)
+    public static long key(int slot, long value) {
+        return RngService.mix64(RngService.mix64(SLOT_SALT + slot) ^ value);
+    }
+
+    // the key of an eaten pellet
+    public static long pelletKey(int index) {
+        return RngService.mix64(PELLET_SALT + index);
+    }
+}
@@ -0,0 +1,29 @@
+// what PacmanEnv.step hands back to an agent: the reward for the step, whether the episode is over,
+// and the observation of the new state. The env reuses one instance, so read it before the next step.
+
+public class StepResult {
+    private double reward;
+    private boolean done;
+    private double[] observation;
+
+    public StepResult(double[] observation) {
+        this.observation = observation;
+    }
+
+    void set(double reward, boolean done) {
+        this.reward = reward;
+        this.done = done;
+    }
+
+    public double getReward() {
+        return reward;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public double[] getObservation() {
+        return observation;
+    }
+}
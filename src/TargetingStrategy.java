@@ -0,0 +1,13 @@
+// a ghost's personality in chase mode: which tile it heads for
+// everything is in whole tiles (col, row) so a strategy never needs a square root or a new Vector
+
+import java.util.List;
+
+public interface TargetingStrategy {
+    // tiles moved per step in a direction, indexed by direction + 2 (RIGHT, DOWN, STOP, UP, LEFT)
+    int[] DIRECTION_COL = {1, 0, 0, 0, -1};
+    int[] DIRECTION_ROW = {0, 1, 0, -1, 0};
+
+    // write the tile the ghost should chase into target[0] (col) and target[1] (row)
+    void chooseTarget(Ghost ghost, Pacman pacman, List<Ghost> ghosts, int[] target);
+}
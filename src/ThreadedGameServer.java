@@ -0,0 +1,258 @@
+// this class hosts games like GameServer, but with plain blocking code instead of selectors and shards:
+// every game has a loop that steps it and queues its states, a writer that blocks on the socket writing them
+// (ServerSession.writeLoop) and a reader that blocks on the socket for the client's messages. A client that reads
+// slowly only holds up its own writer, its game skips states. The messages are the same as GameServer's, so
+// LoadClient works with both
+//
+// there are two ways to run the loops, so they can be compared on the same engine:
+//   virtual   every game loop is its own virtual thread, paced with parkNanos, and so is every reader and writer
+//   platform  the game loops are tasks on a fixed pool of platform threads (a ScheduledThreadPoolExecutor),
+//             every tick schedules the next one, the readers and writers are a platform thread each
+//
+// sockets get a SEND_BUFFER byte send buffer: left to grow, the kernel buffers megabytes (minutes of states)
+// for a client that stopped reading before a state is ever skipped
+// every game loop has its own TickMeter, so a slow game shows up as itself. The stats line adds them all up:
+// ticks played, tick time, and how late ticks started (the server's share of the tail latency clients see)
+//
+// usage: java ThreadedGameServer [virtual|platform] [port] [pool threads]
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ThreadedGameServer {
+    private static final long TICK_NANOS = Math.round(TimerWheel.TICK * 1e9);
+    // about 4 seconds of full states
+    private static final int SEND_BUFFER = 16 * 1024;
+
+    private boolean virtual;
+    private MazeGroup nodes;
+    private ServerSocketChannel server;
+    private ThreadFactory threads;
+    private ThreadFactory writers;
+    private ScheduledExecutorService pool; // platform mode only
+    private Set<GameLoop> loops = ConcurrentHashMap.newKeySet();
+    private AtomicInteger nextSessionId = new AtomicInteger();
+    private volatile boolean running = true;
+
+    // steps one game 60 times a second, on its own virtual thread or as a task of the pool
+    // both wait for the next tick the same way: due a tick after the last one, and if we fell more than a tick
+    // behind we don't try to catch up
+    private class GameLoop implements Runnable {
+        ServerSession session;
+        TickMeter meter = new TickMeter();
+        long nextTick = System.nanoTime();
+
+        GameLoop(ServerSession session) {
+            this.session = session;
+        }
+
+        // the whole life of the game on a virtual thread: tick, then park until the next one is due
+        @Override
+        public void run() {
+            while (running && !session.isClosed()) {
+                tick();
+                long now;
+                while ((now = System.nanoTime()) < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                }
+            }
+            loops.remove(this);
+        }
+
+        // one tick as a task of the pool, which then schedules the next one
+        void tickOnPool() {
+            if (!running || session.isClosed()) {
+                loops.remove(this);
+                return;
+            }
+            tick();
+            pool.schedule(this::tickOnPool, nextTick - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        private void tick() {
+            long start = System.nanoTime();
+            session.tick();
+            long end = System.nanoTime();
+            meter.record(start - nextTick, end - start);
+
+            nextTick += TICK_NANOS;
+            if (end - nextTick > TICK_NANOS) {
+                nextTick = end;
+            }
+        }
+    }
+
+    public ThreadedGameServer(MazeGroup nodes, int port, boolean virtual, int poolThreads) throws IOException {
+        this.nodes = nodes;
+        this.virtual = virtual;
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+
+        if (virtual) {
+            threads = Thread.ofVirtual().name("reader-", 0).factory();
+            writers = Thread.ofVirtual().name("writer-", 0).factory();
+        } else {
+            threads = Thread.ofPlatform().name("reader-", 0).daemon(true).factory();
+            writers = Thread.ofPlatform().name("writer-", 0).daemon(true).factory();
+            pool = Executors.newScheduledThreadPool(poolThreads,
+                    Thread.ofPlatform().name("tick-", 0).daemon(true).priority(Thread.MAX_PRIORITY).factory());
+        }
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::acceptClients, "accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        server.close();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        for (GameLoop loop : loops) {
+            loop.session.close();
+        }
+    }
+
+    private void acceptClients() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setSendBufferSize(SEND_BUFFER);
+                threads.newThread(() -> serve(channel)).start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // a client connection from JOIN to the end, on its own thread: start the game, then read the client's keys
+    private void serve(SocketChannel channel) {
+        ServerSession session = null;
+        ByteBuffer length = ByteBuffer.allocate(2);
+        ByteBuffer message = ByteBuffer.allocate(GameServer.MAX_MESSAGE);
+        try {
+            while (running) {
+                length.clear();
+                if (!readFully(channel, length)) {
+                    break;
+                }
+                int size = length.getShort(0) & 0xFFFF;
+                if (size > GameServer.MAX_MESSAGE) {
+                    break;
+                }
+                message.clear().limit(size);
+                if (!readFully(channel, message)) {
+                    break;
+                }
+                message.flip();
+                if (size == 0) {
+                    continue;
+                }
+
+                byte type = message.get();
+                if (type == GameServer.JOIN && session == null && size >= 9) {
+                    long seed = message.getLong();
+                    boolean deltas = size >= 10 && message.get() == 1;
+                    session = new ServerSession(nextSessionId.getAndIncrement(), seed, nodes, channel, null, deltas);
+                    writers.newThread(session::writeLoop).start();
+                    session.send(GameServer.welcome(session, nodes));
+                    startLoop(session);
+                } else if (type == GameServer.INPUT && session != null && size >= 2) {
+                    session.setInput(message.get());
+                } else if (type == GameServer.ACK && session != null && size >= 5) {
+                    session.ack(message.getInt());
+                }
+            }
+        } catch (IOException e) {
+            // the client is gone
+        }
+
+        if (session != null) {
+            session.close(); // its loop stops on the next tick
+        } else {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void startLoop(ServerSession session) {
+        GameLoop loop = new GameLoop(session);
+        loops.add(loop);
+        if (virtual) {
+            Thread.ofVirtual().name("game-" + session.getId()).start(loop);
+        } else {
+            pool.execute(loop::tickOnPool);
+        }
+    }
+
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // all games together since the last call: ticks, tick time and how late ticks started, states skipped so far
+    // for clients that read too slowly, then the worst game
+    public void printStats(double seconds) {
+        TickMeter total = new TickMeter();
+        GameLoop worst = null;
+        for (GameLoop loop : loops) {
+            if (worst == null || loop.meter.getMaxLateMs() > worst.meter.getMaxLateMs()) {
+                worst = loop;
+            }
+        }
+        String worstLine = worst == null ? "" : String.format("  worst game %d: %.2f ms late at p99, %.2f ms max%n",
+                worst.session.getId(), worst.meter.getLatePercentileMs(99), worst.meter.getMaxLateMs());
+        long skipped = 0;
+        for (GameLoop loop : loops) {
+            loop.meter.addTo(total);
+            loop.meter.reset();
+            skipped += loop.session.getStatesSkipped();
+        }
+
+        System.out.printf("%s: %d games, %.0f ticks/s, tick %.3f ms avg %.2f ms max, "
+                        + "late p50 %.1f ms p99 %.1f ms max %.1f ms, %d states skipped, %d platform threads%n%s",
+                virtual ? "virtual" : "platform", loops.size(), total.getTicks() / seconds,
+                total.getAverageMs(), total.getMaxMs(), total.getLatePercentileMs(50),
+                total.getLatePercentileMs(99), total.getMaxLateMs(), skipped, Thread.activeCount(), worstLine);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean virtual = args.length == 0 || !args[0].equals("platform");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int poolThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        ThreadedGameServer gameServer = new ThreadedGameServer(new MazeGroup(FileReader.readMazeFile("pacMaze1.txt")),
+                port, virtual, poolThreads);
+        gameServer.start();
+        System.out.println("Threaded game server on port " + port + ", "
+                + (virtual ? "a virtual thread per game" : poolThreads + " platform tick threads"));
+        while (true) {
+            Thread.sleep(5000);
+            gameServer.printStats(5);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// this class meters one game loop: how many ticks it played, how long they took and how late they started
+// compared to when they were due. The loop records every tick, a stats printer adds the meters of all loops
+// together now and then, without locking (like the shard stats of GameServer, only ever a rough picture)
+
+public class TickMeter {
+    // ticks by how late they started, in microseconds: 0 to 7 exactly, then 8 buckets for every power of two,
+    // so a bucket is never more than an eighth wider than where it starts (up to about 30 s)
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = SUB_BUCKETS + 22 * SUB_BUCKETS;
+
+    private long[] late = new long[BUCKETS];
+    private long ticks;
+    private long totalNanos;
+    private long maxNanos;
+    private long maxLateNanos;
+
+    // one tick that started lateNanos after it was due and took tookNanos
+    public void record(long lateNanos, long tookNanos) {
+        lateNanos = Math.max(0, lateNanos);
+        late[bucket(lateNanos / 1000)]++;
+        ticks++;
+        totalNanos += tookNanos;
+        maxNanos = Math.max(maxNanos, tookNanos);
+        maxLateNanos = Math.max(maxLateNanos, lateNanos);
+    }
+
+    public void addTo(TickMeter total) {
+        for (int i = 0; i < BUCKETS; i++) {
+            total.late[i] += late[i];
+        }
+        total.ticks += ticks;
+        total.totalNanos += totalNanos;
+        total.maxNanos = Math.max(total.maxNanos, maxNanos);
+        total.maxLateNanos = Math.max(total.maxLateNanos, maxLateNanos);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            late[i] = 0;
+        }
+        ticks = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        maxLateNanos = 0;
+    }
+
+    // how late a tick started at the given percentile (0 to 100), in ms, to the top of its bucket
+    public double getLatePercentileMs(double percentile) {
+        long wanted = (long) Math.ceil(ticks * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += late[i];
+            if (seen >= wanted && seen > 0) {
+                return Math.min(bucketTop(i), maxLateNanos / 1000) / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(micros); // 3 and up
+        int sub = (int) (micros >>> (power - 3)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, SUB_BUCKETS + (power - 3) * SUB_BUCKETS + sub);
+    }
+
+    // the largest number of microseconds in a bucket
+    private static long bucketTop(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int power = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 3;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (power - 3)) - 1;
+    }
+
+    // getters
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public double getAverageMs() {
+        return ticks == 0 ? 0 : totalNanos / (double) ticks / 1e6;
+    }
+
+    public double getMaxMs() {
+        return maxNanos / 1e6;
+    }
+
+    public double getMaxLateMs() {
+        return maxLateNanos / 1e6;
+    }
+}
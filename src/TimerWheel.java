@@ -0,0 +1,119 @@
+// this class keeps the game timers (mode switches, frightened mode, ghost releases, animations) in one place
+// it is a hashed timing wheel: time moves in ticks of 1/60 second, and a timer sits in the slot of the tick it
+// goes off on (modulo the number of slots). Every tick only the timers in one slot are looked at, so a tick
+// costs about as much as the timers that go off in it, however many timers are waiting
+//
+// timers further away than one turn of the wheel stay in their slot and are skipped until their turn comes
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheel {
+    // one tick of game time, the same as a PacmanEnv step
+    public static final double TICK = 1.0 / 60.0;
+
+    // slots on the wheel, a power of two so the slot is deadline & MASK
+    private static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    private GameTimer[] slots = new GameTimer[SLOTS];
+    private long tick;
+    private double pendingTime; // time passed since the last whole tick
+    private List<GameTimer> expired = new ArrayList<>();
+
+    // whole ticks for a duration in seconds
+    public static long ticks(double seconds) {
+        return Math.round(seconds / TICK);
+    }
+
+    // let dt seconds of game time pass, every whole tick in it runs the timers that are due
+    public void advance(double dt) {
+        pendingTime += dt;
+        // a hair of slack so summing up TICKs doesn't lose a tick to rounding
+        while (pendingTime >= TICK - 1e-9) {
+            pendingTime -= TICK;
+            tick();
+        }
+        if (pendingTime < 0) {
+            pendingTime = 0;
+        }
+    }
+
+    // move on by one tick and run the timers that go off on it
+    public void tick() {
+        tick++;
+
+        // take the due timers off first, their tasks may schedule or cancel other timers
+        GameTimer timer = slots[(int) (tick & MASK)];
+        while (timer != null) {
+            GameTimer next = timer.next;
+            if (timer.deadline <= tick) {
+                remove(timer);
+                timer.due = true;
+                expired.add(timer);
+            }
+            timer = next;
+        }
+
+        for (int i = 0; i < expired.size(); i++) {
+            GameTimer due = expired.get(i);
+            if (due.due) {
+                due.due = false;
+                due.run();
+            }
+        }
+        expired.clear();
+    }
+
+    // make the timer go off delayTicks ticks from now (at least one), it is moved if it was already scheduled
+    public void schedule(GameTimer timer, long delayTicks) {
+        timer.cancel();
+        timer.wheel = this;
+        timer.deadline = tick + Math.max(1, delayTicks);
+        timer.scheduled = true;
+
+        int slot = (int) (timer.deadline & MASK);
+        timer.previous = null;
+        timer.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].previous = timer;
+        }
+        slots[slot] = timer;
+    }
+
+    // same, with the delay in seconds
+    public void scheduleSeconds(GameTimer timer, double seconds) {
+        schedule(timer, ticks(seconds));
+    }
+
+    void remove(GameTimer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[(int) (timer.deadline & MASK)] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.scheduled = false;
+    }
+
+    // getters and setters
+
+    // ticks since the wheel was made
+    public long getTick() {
+        return tick;
+    }
+
+    // time since the last whole tick, in seconds
+    public double getPendingTime() {
+        return pendingTime;
+    }
+
+    // put back the time since the last whole tick (restoring a snapshot)
+    public void setPendingTime(double pendingTime) {
+        this.pendingTime = pendingTime;
+    }
+}
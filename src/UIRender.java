@@ -7,6 +7,7 @@ import java.awt.*;
 public class UIRender {
     // reference to game state
     private GameState gameState;
+    private HighScoreLog highScores; // null without a high score log
 
     // fonts for different UI elements
     private Font titleFont;
@@ -25,7 +26,8 @@ public class UIRender {
     private final int SCREEN_HEIGHT = Constants.SCREEN_HEIGHT;
 
     // animation properties for certain UI elements
-    private double animationTime = 0;
+    private TimerWheel timers;
+    private GameTimer blinkTimer = new GameTimer(this::blink);
     private boolean blinkOn = true;
 
     // pacman animation properties
@@ -33,8 +35,11 @@ public class UIRender {
     private int pacmanMouthAngle = 45;
     private boolean pacmanMouthClosing = false;
 
-    public UIRender(GameState gameState) {
+    // the blinking text runs on the given timer wheel, whoever owns it turns it every frame
+    public UIRender(GameState gameState, TimerWheel timers) {
         this.gameState = gameState;
+        this.timers = timers;
+        timers.scheduleSeconds(blinkTimer, 0.5);
 
         // initialize fonts
         try {
@@ -57,6 +62,17 @@ public class UIRender {
         }
     }
 
+    // show the best score from this log
+    public void setHighScores(HighScoreLog highScores) {
+        this.highScores = highScores;
+    }
+
+    // the best score ever, or this game's if it's better
+    private int getHighScore() {
+        int best = highScores == null ? 0 : highScores.getBest();
+        return Math.max(best, gameState.getScore());
+    }
+
     // render all UI elements based on current game state
     public void render(Graphics g) {
         // always render score and lives during gameplay
@@ -86,15 +102,6 @@ public class UIRender {
 
     // update animation timers for UI elements
     public void update(double dt) {
-        // update animation timer
-        animationTime += dt;
-
-        // toggle blink state every 0.5 seconds
-        if (animationTime >= 0.5) {
-            animationTime = 0;
-            blinkOn = !blinkOn;
-        }
-
         // update Pacman animation
         pacmanAnimTime += dt;
         if (pacmanAnimTime >= 0.001) {
@@ -117,6 +124,12 @@ public class UIRender {
         }
     }
 
+    // toggle blink state every 0.5 seconds
+    private void blink() {
+        blinkOn = !blinkOn;
+        timers.scheduleSeconds(blinkTimer, 0.5);
+    }
+
     // render game information (score, lives, levels)
     private void renderGameInfo(Graphics g) {
         // draw the top info bar
@@ -138,6 +151,10 @@ public class UIRender {
         int levelTextWidth = fm.stringWidth(levelText);
         g.drawString(levelText, SCREEN_WIDTH - levelTextWidth - 10, 25);
 
+        // high score
+        String highText = "HIGH " + getHighScore();
+        g.drawString(highText, SCREEN_WIDTH - fm.stringWidth(highText) - 10, 50);
+
         // draw Pacman icons for lives
         int pacmanSize = 16;
         for (int i = 0; i < gameState.getLives(); i++) {
@@ -376,6 +393,11 @@ public class UIRender {
         int levelWidth = fmScore.stringWidth(levelText);
         g.drawString(levelText, (SCREEN_WIDTH - levelWidth) / 2, SCREEN_HEIGHT / 2 + 30);
 
+        // draw the best score ever
+        String highText = "HIGH SCORE " + getHighScore();
+        int highWidth = fmScore.stringWidth(highText);
+        g.drawString(highText, (SCREEN_WIDTH - highWidth) / 2, SCREEN_HEIGHT / 2 + 60);
+
         // draw restart prompt - blinking
         if (blinkOn) {
             g.setColor(Color.WHITE);